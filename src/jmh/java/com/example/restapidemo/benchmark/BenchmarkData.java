@@ -0,0 +1,158 @@
+package com.example.restapidemo.benchmark;
+
+import com.example.restapidemo.auth.PasswordService;
+import com.example.restapidemo.config.StoreConfig;
+import com.example.restapidemo.model.Center;
+import com.example.restapidemo.model.Patient;
+import com.example.restapidemo.model.User;
+import com.example.restapidemo.persistence.PersistenceManager;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.TextNormalizer;
+import com.example.restapidemo.store.UserCenterIndex;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Random;
+
+/**
+ * Datos sintéticos para los benchmarks
+ * Los almacenes se crean con la misma configuración que en la aplicación
+ * (StoreConfig) pero sin persistencia, y se rellenan con datos parecidos a
+ * los reales: nombres y apellidos frecuentes, con tildes, que se repiten
+ *
+ * La semilla es fija para que dos ejecuciones midan exactamente lo mismo
+ */
+final class BenchmarkData {
+
+    static final String[] NOMBRES = {
+            "María", "José", "Juan", "Ana", "Carmen", "Antonio", "Lucía", "Manuel", "Laura", "Francisco",
+            "Sofía", "David", "Marta", "Javier", "Paula", "Daniel", "Elena", "Álvaro", "Sara", "Pablo",
+            "Raúl", "Inés", "Sergio", "Nuria", "Jesús", "Irene", "Rubén", "Cristina", "Óscar", "Andrés"
+    };
+
+    static final String[] APELLIDOS = {
+            "García", "Rodríguez", "González", "Fernández", "López", "Martínez", "Sánchez", "Pérez",
+            "Gómez", "Martín", "Jiménez", "Ruiz", "Hernández", "Díaz", "Moreno", "Muñoz", "Álvarez",
+            "Romero", "Alonso", "Gutiérrez", "Navarro", "Torres", "Domínguez", "Vázquez", "Ramos"
+    };
+
+    static final String[] ROLES = {"Admin", "Usuario", "Solo lectura"};
+
+    static final String[] DIAGNOSTICOS = {
+            "Hipertensión", "Diabetes tipo 2", "Asma", "Migraña", "Artrosis", "Ansiedad",
+            "Hipotiroidismo", "Dermatitis", "Lumbalgia", "Anemia", "Insomnio", "Colesterol alto"
+    };
+
+    private static final long SEED = 42;
+
+    private BenchmarkData() {
+    }
+
+    static PersistenceManager noPersistence() {
+        try {
+            return new PersistenceManager(false, "data", 0, 0, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Los benchmarks no cifran contraseñas: basta con el pool más pequeño
+    static PasswordService passwords() {
+        return new PasswordService(4, 1, 1, 1, 0);
+    }
+
+    static InMemoryStore<User> users(int size) {
+        InMemoryStore<User> store = new StoreConfig().userStore(noPersistence());
+        Random random = new Random(SEED);
+        for (int i = 0; i < size; i++) {
+            store.create(randomUser(random));
+        }
+        return store;
+    }
+
+    static InMemoryStore<Patient> patients(int size) {
+        InMemoryStore<Patient> store = new StoreConfig().patientStore(noPersistence());
+        Random random = new Random(SEED);
+        for (int i = 0; i < size; i++) {
+            store.create(randomPatient(random));
+        }
+        return store;
+    }
+
+    static InMemoryStore<Center> centers(int size) {
+        InMemoryStore<Center> store = new StoreConfig().centerStore(noPersistence());
+        for (int i = 1; i <= size; i++) {
+            Center center = new Center();
+            center.setNombre("Centro " + APELLIDOS[i % APELLIDOS.length] + " " + i);
+            center.setDescripcion("Centro de salud número " + i);
+            store.create(center);
+        }
+        return store;
+    }
+
+    /**
+     * Asigna a cada usuario entre 1 y 4 de los centros, con más usuarios en los primeros
+     */
+    static UserCenterIndex userCenters(int users, int centers) {
+        UserCenterIndex index = new UserCenterIndex();
+        Random random = new Random(SEED);
+        for (long idUsuario = 1; idUsuario <= users; idUsuario++) {
+            int count = 1 + random.nextInt(4);
+            for (int i = 0; i < count; i++) {
+                long idCentro = 1 + (long) (centers * Math.pow(random.nextDouble(), 2));
+                index.add(idUsuario, idCentro);
+            }
+        }
+        return index;
+    }
+
+    static User randomUser(Random random) {
+        String nombre = pick(random, NOMBRES);
+        String apellido = pick(random, APELLIDOS);
+        User user = new User();
+        user.setNombre(nombre + " " + apellido);
+        user.setEmail(email(nombre, apellido, random));
+        user.setEdad(18 + random.nextInt(70));
+        user.setCreacion(randomDate(random, 2020, 2025));
+        user.setUltimoLogin(randomDate(random, 2025, 2025));
+        user.setRol(pick(random, ROLES));
+        user.setNivelDePermiso(1 + random.nextInt(3));
+        user.setPuntuacion(random.nextInt(11));
+        user.setDescripcion("Usuario " + nombre + ".");
+        return user;
+    }
+
+    static Patient randomPatient(Random random) {
+        String nombre = pick(random, NOMBRES);
+        String apellido1 = pick(random, APELLIDOS);
+        Patient patient = new Patient();
+        patient.setNombre(nombre);
+        patient.setApellido1(apellido1);
+        patient.setApellido2(pick(random, APELLIDOS));
+        patient.setFechaDeNacimiento(randomDate(random, 1930, 2020));
+        patient.setSexo(random.nextBoolean() ? "Hombre" : "Mujer");
+        patient.setDni(String.format("%08d%c", random.nextInt(100_000_000), (char) ('A' + random.nextInt(26))));
+        patient.setNumeroTelefono(600_000_000 + random.nextInt(100_000_000));
+        patient.setEmail(email(nombre, apellido1, random));
+        patient.setColorFichaMedica(String.format("#%06x", random.nextInt(0x1000000)));
+        String[] diagnosticos = new String[random.nextInt(4)];
+        for (int i = 0; i < diagnosticos.length; i++) {
+            diagnosticos[i] = pick(random, DIAGNOSTICOS);
+        }
+        patient.setDiagnosticos(diagnosticos);
+        patient.setComentariosDePaciente(new String[] {"Revisión en " + (1 + random.nextInt(12)) + " meses."});
+        return patient;
+    }
+
+    static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static String randomDate(Random random, int fromYear, int toYear) {
+        return (1 + random.nextInt(28)) + "/" + (1 + random.nextInt(12)) + "/" + (fromYear + random.nextInt(toYear - fromYear + 1));
+    }
+
+    private static String email(String nombre, String apellido, Random random) {
+        return TextNormalizer.fold(nombre + "." + apellido) + random.nextInt(10_000) + "@example.com";
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.restapidemo.benchmark;
+
+import com.example.restapidemo.config.StoreConfig;
+import com.example.restapidemo.model.User;
+import com.example.restapidemo.store.InMemoryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Alta y baja de usuarios con todos sus índices (ordenados y de trigramas)
+ * El tamaño del almacén se mantiene estable: cada operación crea un usuario
+ * y borra el que acaba de crear. Con varios hilos mide también la contención
+ * en el cerrojo de escritura
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChurnBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    InMemoryStore<User> users;
+    User[] templates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        users = BenchmarkData.users(size);
+        new StoreConfig().userNameIndex(users);
+        Random random = new Random(7);
+        templates = new User[1024];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = BenchmarkData.randomUser(random);
+        }
+    }
+
+    @Benchmark
+    public boolean createDelete(ThreadState thread) {
+        User user = copy(templates[thread.next++ & (templates.length - 1)]);
+        return users.delete(users.create(user).getId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public boolean createDeleteContended(ThreadState thread) {
+        return createDelete(thread);
+    }
+
+    // El almacén asigna el ID sobre la misma instancia, así que cada alta necesita una nueva
+    private static User copy(User template) {
+        User user = new User();
+        user.setNombre(template.getNombre());
+        user.setEmail(template.getEmail());
+        user.setEdad(template.getEdad());
+        user.setRol(template.getRol());
+        user.setPuntuacion(template.getPuntuacion());
+        return user;
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int next;
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.restapidemo.benchmark;
+
+import com.example.restapidemo.config.StoreConfig;
+import com.example.restapidemo.controller.UserController;
+import com.example.restapidemo.model.User;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.VersionLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda por ID: directamente en el almacén y a través del controlador
+ * Los IDs son aleatorios para no medir siempre la misma línea de caché
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LookupBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    InMemoryStore<User> users;
+    UserController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        users = BenchmarkData.users(size);
+        StoreConfig config = new StoreConfig();
+        controller = new UserController(users, config.userNameIndex(users), config.userScoreRank(users),
+                config.userChangeLog(users, VersionLog.DEFAULT_MAX_TOMBSTONES), new ObjectMapper(),
+                BenchmarkData.passwords(), Runnable::run);
+    }
+
+    @Benchmark
+    public Optional<User> storeFindById() {
+        return users.findById(randomId());
+    }
+
+    @Benchmark
+    public ResponseEntity<User> controllerGetById() {
+        return controller.getUserById(randomId());
+    }
+
+    @Benchmark
+    public ResponseEntity<User> controllerGetMissing() {
+        return controller.getUserById(size + randomId());
+    }
+
+    private long randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(size);
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.restapidemo.benchmark;
+
+import com.example.restapidemo.config.StoreConfig;
+import com.example.restapidemo.controller.UserController;
+import com.example.restapidemo.model.User;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.NGramIndex;
+import com.example.restapidemo.store.VersionLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Búsqueda por nombre con el índice de trigramas
+ * Las consultas cubren una muy selectiva, una frecuente, una corta (menos de
+ * tres letras, que recorre las claves) y una sin resultados
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    @Param({"Álvaro Domínguez", "garcia", "ru", "xyz"})
+    String query;
+
+    NGramIndex<User> nameIndex;
+    UserController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryStore<User> users = BenchmarkData.users(size);
+        StoreConfig config = new StoreConfig();
+        nameIndex = config.userNameIndex(users);
+        controller = new UserController(users, nameIndex, config.userScoreRank(users),
+                config.userChangeLog(users, VersionLog.DEFAULT_MAX_TOMBSTONES), new ObjectMapper(),
+                BenchmarkData.passwords(), Runnable::run);
+    }
+
+    @Benchmark
+    public long[] indexSearch() {
+        return nameIndex.search(query);
+    }
+
+    @Benchmark
+    public ResponseEntity<List<User>> controllerSearch() {
+        return controller.searchUsersByName(query);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.restapidemo.benchmark;
+
+import com.example.restapidemo.model.Patient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialización JSON de listas de pacientes con el mismo ObjectMapper que usa Spring
+ * Se escribe a un stream que descarta los bytes para medir solo Jackson y no
+ * el crecimiento de un buffer en memoria
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    List<Patient> patients;
+    List<Patient> firstPage;
+    ObjectMapper mapper;
+    ObjectWriter writer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        patients = BenchmarkData.patients(size).findAll();
+        firstPage = patients.subList(0, Math.min(100, patients.size()));
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        writer = mapper.writerFor(mapper.getTypeFactory().constructCollectionType(List.class, Patient.class));
+    }
+
+    @Benchmark
+    public void writeAll() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), patients);
+    }
+
+    @Benchmark
+    public byte[] writeFirstPageToBytes() throws IOException {
+        return writer.writeValueAsBytes(firstPage);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.restapidemo.benchmark;
+
+import com.example.restapidemo.config.StoreConfig;
+import com.example.restapidemo.model.User;
+import com.example.restapidemo.persistence.PersistenceManager;
+import com.example.restapidemo.store.InMemoryStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Hilos de plataforma frente a hilos virtuales atendiendo altas con el WAL activo
+ * Cada invocación lanza "requests" altas a la vez, como si fueran peticiones,
+ * y espera a que todas estén en disco. El pool de plataforma tiene 200 hilos,
+ * los mismos que Tomcat por defecto; con hilos virtuales hay uno por petición
+ * y el WAL puede juntar más altas en cada escritura
+ *
+ * Los hilos virtuales necesitan Java 21: se crean por reflexión para que el
+ * benchmark compile con Java 17, donde la variante "virtual" falla al arrancar
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadModelBenchmark {
+
+    private static final int PLATFORM_THREADS = 200;
+    private static final int REQUESTS = 2000;
+
+    @Param({"platform", "virtual"})
+    String threads;
+
+    Path directory;
+    PersistenceManager persistence;
+    InMemoryStore<User> users;
+    ExecutorService executor;
+    User[] templates;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ReflectiveOperationException, IOException {
+        executor = "virtual".equals(threads) ? virtualThreads() : Executors.newFixedThreadPool(PLATFORM_THREADS);
+        directory = Files.createTempDirectory("thread-model-benchmark");
+        persistence = new PersistenceManager(true, directory.toString(), 0, 0, 512);
+        users = new StoreConfig().userStore(persistence);
+        Random random = new Random(7);
+        templates = new User[1024];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = BenchmarkData.randomUser(random);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        persistence.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public void durableCreates() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(REQUESTS);
+        for (int i = 0; i < REQUESTS; i++) {
+            User template = templates[i & (templates.length - 1)];
+            executor.execute(() -> {
+                try {
+                    users.delete(users.create(copy(template)).getId());
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+
+    private static ExecutorService virtualThreads() throws ReflectiveOperationException {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Los hilos virtuales necesitan Java 21", e);
+        }
+    }
+
+    private static User copy(User template) {
+        User user = new User();
+        user.setNombre(template.getNombre());
+        user.setEmail(template.getEmail());
+        user.setRol(template.getRol());
+        return user;
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.restapidemo.benchmark;
+
+import com.example.restapidemo.controller.UserCenterController;
+import com.example.restapidemo.model.UserCenter;
+import com.example.restapidemo.store.UserCenterIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Consultas de asignaciones usuario-centro en los dos sentidos
+ * Hay un centro por cada 100 usuarios y los primeros centros concentran
+ * más usuarios, como pasa con los centros grandes
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserCenterBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int size;
+
+    int centers;
+    UserCenterIndex index;
+    UserCenterController controller;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        centers = Math.max(10, size / 100);
+        index = BenchmarkData.userCenters(size, centers);
+        controller = new UserCenterController(index);
+    }
+
+    @Benchmark
+    public long[] centersOfUser() {
+        return index.centersOf(1 + ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    public long[] usersOfCenter() {
+        return index.usersOf(1 + ThreadLocalRandom.current().nextInt(centers));
+    }
+
+    @Benchmark
+    public boolean contains() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return index.contains(1 + random.nextInt(size), 1 + random.nextInt(centers));
+    }
+
+    @Benchmark
+    public ResponseEntity<List<UserCenter>> controllerSearchByUser() {
+        return controller.searchUserCentersByUserId(1L + ThreadLocalRandom.current().nextInt(size));
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.restapidemo.auth;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Cifrado y comprobación de contraseñas con BCrypt
+ * BCrypt es lento a propósito (decenas de milisegundos de CPU por contraseña),
+ * así que no se ejecuta en los hilos que atienden peticiones sino en un pool
+ * propio con un número fijo de hilos y una cola limitada. Si la cola está
+ * llena el futuro falla con {@link RejectedExecutionException} y se responde
+ * enseguida en vez de acumular trabajo
+ *
+ * El pool sigue siendo de hilos normales aunque las peticiones usen hilos
+ * virtuales: el trabajo es de CPU y lo que se busca precisamente es limitarlo
+ *
+ * Las contraseñas de un lote se cifran unas pocas a la vez (ver {@link #hashAll})
+ * para que un lote grande no ocupe toda la cola
+ *
+ * Los logins correctos se recuerdan unos segundos para que repetir el mismo
+ * login no vuelva a calcular el hash. Lo que se guarda es un HMAC-SHA256 de
+ * la contraseña con una clave aleatoria que solo existe en memoria y cambia
+ * en cada arranque: sin la clave, un volcado de memoria no permite probar
+ * contraseñas contra la caché más rápido que contra el propio BCrypt
+ */
+@Component
+public class PasswordService {
+
+    private static final int MAX_CACHED_LOGINS = 10_000;
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    private final BCryptPasswordEncoder encoder;
+    private final ThreadPoolExecutor executor;
+    private final int batchConcurrency;
+    private final long cacheTtlNanos;
+    private final SecretKeySpec cacheKey;
+    private final ConcurrentHashMap<String, VerifiedLogin> verified = new ConcurrentHashMap<>();
+
+    public PasswordService(
+            @Value("${app.passwords.bcrypt-strength:10}") int strength,
+            @Value("${app.passwords.threads:0}") int threads,
+            @Value("${app.passwords.queue-capacity:64}") int queueCapacity,
+            @Value("${app.passwords.batch-concurrency:0}") int batchConcurrency,
+            @Value("${app.passwords.verified-cache-seconds:60}") long cacheSeconds) {
+        this.encoder = new BCryptPasswordEncoder(strength);
+        // Por defecto la mitad de los procesadores, para dejar CPU al resto de endpoints
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        // Por defecto la mitad de los hilos: un lote no se queda nunca con todo el pool
+        this.batchConcurrency = batchConcurrency > 0 ? batchConcurrency : Math.max(1, poolSize / 2);
+        this.cacheTtlNanos = TimeUnit.SECONDS.toNanos(cacheSeconds);
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        this.cacheKey = new SecretKeySpec(key, MAC_ALGORITHM);
+    }
+
+    /**
+     * Calcula el hash de una contraseña nueva
+     */
+    public CompletableFuture<String> hash(String rawPassword) {
+        return submit(() -> encoder.encode(rawPassword));
+    }
+
+    /**
+     * Calcula los hashes de las contraseñas de un lote, en el mismo orden
+     * Como mucho hay batch-concurrency en el pool a la vez: cada una se encola
+     * cuando termina la que va batch-concurrency posiciones antes. Si aun así
+     * no cabe en la cola, solo falla su futuro y el resto sigue
+     */
+    public List<CompletableFuture<String>> hashAll(List<String> rawPasswords) {
+        List<CompletableFuture<String>> hashes = new ArrayList<>(rawPasswords.size());
+        for (int i = 0; i < rawPasswords.size(); i++) {
+            String rawPassword = rawPasswords.get(i);
+            CompletableFuture<?> previous = i < batchConcurrency
+                    ? CompletableFuture.completedFuture(null)
+                    : hashes.get(i - batchConcurrency);
+            hashes.add(previous.handle((done, error) -> null).thenCompose(ignored -> hash(rawPassword)));
+        }
+        return hashes;
+    }
+
+    /**
+     * Si el error es que el pool estaba lleno (hay que responder 503 y reintentar)
+     */
+    public static boolean isBusy(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof RejectedExecutionException;
+    }
+
+    /**
+     * Comprueba la contraseña de un login contra el hash guardado del usuario
+     *
+     * @param login clave del login en la caché (el email normalizado)
+     */
+    public CompletableFuture<Boolean> verify(String login, String rawPassword, String passwordHash) {
+        if (rawPassword == null || passwordHash == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        // La caché guarda un HMAC con clave secreta, nunca la contraseña; y como
+        // incluye el hash guardado, deja de valer en cuanto cambia la contraseña
+        byte[] fingerprint = fingerprint(rawPassword, passwordHash);
+        VerifiedLogin cached = verified.get(login);
+        if (cached != null && cached.expiresAt() - System.nanoTime() > 0
+                && MessageDigest.isEqual(cached.fingerprint(), fingerprint)) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return submit(() -> encoder.matches(rawPassword, passwordHash)).thenApply(matches -> {
+            if (matches) {
+                remember(login, fingerprint);
+            } else {
+                verified.remove(login);
+            }
+            return matches;
+        });
+    }
+
+    /**
+     * Comprobaciones esperando en la cola
+     */
+    public int queueSize() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <R> CompletableFuture<R> submit(Supplier<R> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void remember(String login, byte[] fingerprint) {
+        long now = System.nanoTime();
+        if (verified.size() >= MAX_CACHED_LOGINS) {
+            verified.values().removeIf(entry -> entry.expiresAt() - now <= 0);
+            if (verified.size() >= MAX_CACHED_LOGINS) {
+                verified.clear();
+            }
+        }
+        verified.put(login, new VerifiedLogin(fingerprint, now + cacheTtlNanos));
+    }
+
+    // Un Mac no se puede compartir entre hilos: se crea uno por comprobación
+    private byte[] fingerprint(String rawPassword, String passwordHash) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(cacheKey);
+            mac.update(passwordHash.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(rawPassword.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record VerifiedLogin(byte[] fingerprint, long expiresAt) {
+    }
+}
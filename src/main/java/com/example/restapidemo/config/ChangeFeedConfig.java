@@ -0,0 +1,24 @@
+package com.example.restapidemo.config;
+
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.UserCenterIndex;
+import com.example.restapidemo.web.ChangeFeed;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Conecta los almacenes al canal de cambios
+ * Se intercala en el journal de cada uno, después de que la persistencia haya
+ * recuperado sus datos, así que solo se publican los cambios nuevos
+ */
+@Configuration
+public class ChangeFeedConfig {
+
+    public ChangeFeedConfig(ChangeFeed changeFeed, List<InMemoryStore<?>> stores, UserCenterIndex userCenterIndex) {
+        for (InMemoryStore<?> store : stores) {
+            store.setJournal(changeFeed.wrap(store.getJournal()));
+        }
+        userCenterIndex.setJournal(changeFeed.wrap(userCenterIndex.getJournal()));
+    }
+}
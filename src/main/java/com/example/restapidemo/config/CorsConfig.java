@@ -1,7 +1,9 @@
 package com.example.restapidemo.config;
 
+import com.example.restapidemo.web.PageResponses;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
@@ -36,6 +38,12 @@ public class CorsConfig {
         // Permitir todos los métodos HTTP (GET, POST, PUT, DELETE, etc.)
         config.addAllowedMethod("*");
 
+        // Permitir que el frontend lea el cursor de la página siguiente
+        config.addExposedHeader(PageResponses.NEXT_CURSOR_HEADER);
+
+        // Y el ETag, para repetir la petición con If-None-Match
+        config.addExposedHeader(HttpHeaders.ETAG);
+
         // Tiempo en segundos que el navegador puede cachear la respuesta preflight
         config.setMaxAge(3600L);
 
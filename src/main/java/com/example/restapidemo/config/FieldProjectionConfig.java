@@ -0,0 +1,72 @@
+package com.example.restapidemo.config;
+
+import com.example.restapidemo.web.FieldProjection;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.swagger.v3.oas.models.media.StringSchema;
+import io.swagger.v3.oas.models.parameters.QueryParameter;
+import org.springdoc.core.customizers.OperationCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * Aplica ?fields= a todas las respuestas JSON de los GET y lo documenta en OpenAPI
+ * Los controladores no tienen que hacer nada: el conversor JSON mira el
+ * parámetro de la petición y, si está, escribe con el writer proyectado
+ */
+@Configuration
+public class FieldProjectionConfig implements WebMvcConfigurer {
+
+    private final ObjectMapper mapper;
+    private final FieldProjection projection;
+
+    public FieldProjectionConfig(ObjectMapper mapper, FieldProjection projection) {
+        this.mapper = mapper;
+        this.projection = projection;
+    }
+
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        // Justo delante del conversor JSON de Spring, que sigue atendiendo lo demás; detrás de
+        // los de byte[] y String, para que las respuestas ya serializadas no pasen por Jackson
+        int position = 0;
+        while (position < converters.size() && !(converters.get(position) instanceof MappingJackson2HttpMessageConverter)) {
+            position++;
+        }
+        converters.add(position, new MappingJackson2HttpMessageConverter(mapper) {
+            @Override
+            protected void writeInternal(Object object, Type type, HttpOutputMessage outputMessage)
+                    throws IOException, HttpMessageNotWritableException {
+                String fields = FieldProjection.requestedFields();
+                if (fields == null) {
+                    super.writeInternal(object, type, outputMessage);
+                    return;
+                }
+                projection.writer(fields).writeValue(outputMessage.getBody(), object);
+            }
+        });
+    }
+
+    @Bean
+    public OperationCustomizer fieldsParameter() {
+        return (operation, handlerMethod) -> {
+            if (handlerMethod.hasMethodAnnotation(GetMapping.class)
+                    && handlerMethod.getMethodAnnotation(GetMapping.class).produces().length == 0) {
+                operation.addParametersItem(new QueryParameter()
+                        .name(FieldProjection.PARAMETER)
+                        .description("Campos a incluir, separados por comas (por defecto, todos). Ejemplo: id,nombre")
+                        .schema(new StringSchema()));
+            }
+            return operation;
+        };
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.restapidemo.config;
+
+import com.example.restapidemo.auth.PasswordService;
+import com.example.restapidemo.model.Dictionaries;
+import com.example.restapidemo.model.StringDictionary;
+import com.example.restapidemo.store.ChangeLog;
+import com.example.restapidemo.store.HashIndex;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.InvertedIndex;
+import com.example.restapidemo.store.NGramIndex;
+import com.example.restapidemo.store.RankIndex;
+import com.example.restapidemo.store.UserCenterIndex;
+import com.example.restapidemo.web.ChangeFeed;
+import com.example.restapidemo.web.ResponseCache;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Métricas de los almacenes en memoria y sus índices
+ * La latencia de cada endpoint ya la mide Spring (http.server.requests, con
+ * una serie por URI); aquí se añade el tamaño de los datos y cuánto trabajo
+ * hace cada búsqueda por nombre, para relacionar la latencia con su causa
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public MeterBinder storeMetrics(List<InMemoryStore<?>> stores, Map<String, NGramIndex<?>> nameIndexes,
+                                    Map<String, HashIndex<?, ?>> hashIndexes, Map<String, InvertedIndex<?>> invertedIndexes,
+                                    Map<String, RankIndex<?>> rankIndexes, Map<String, ChangeLog<?>> changeLogs,
+                                    UserCenterIndex userCenterIndex,
+                                    PasswordService passwords, ResponseCache responseCache,
+                                    ChangeFeed changeFeed) {
+        return registry -> {
+            Gauge.builder("auth.password.queue", passwords, PasswordService::queueSize)
+                    .description("Comprobaciones de contraseña esperando en la cola")
+                    .register(registry);
+
+            Gauge.builder("cache.responses.entries", responseCache, ResponseCache::size)
+                    .description("Respuestas ya serializadas guardadas")
+                    .register(registry);
+
+            Gauge.builder("changes.subscribers", changeFeed, ChangeFeed::subscriberCount)
+                    .description("Clientes conectados al canal de cambios")
+                    .register(registry);
+            FunctionCounter.builder("changes.evictions", changeFeed, ChangeFeed::evictionCount)
+                    .description("Clientes desconectados por no leer los cambios a tiempo")
+                    .register(registry);
+
+            for (InMemoryStore<?> store : stores) {
+                Gauge.builder("store.records", store, InMemoryStore::size)
+                        .description("Entidades guardadas en el almacén")
+                        .tag("store", store.getName())
+                        .register(registry);
+            }
+            Gauge.builder("store.records", userCenterIndex, UserCenterIndex::size)
+                    .description("Entidades guardadas en el almacén")
+                    .tag("store", UserCenterIndex.NAME)
+                    .register(registry);
+
+            for (StringDictionary dictionary : Dictionaries.all()) {
+                Gauge.builder("store.dictionary.entries", dictionary, StringDictionary::size)
+                        .description("Valores distintos guardados en el diccionario")
+                        .tag("field", dictionary.getName())
+                        .register(registry);
+            }
+
+            hashIndexes.forEach((name, index) -> Gauge.builder("store.index.entries", index, HashIndex::size)
+                    .description("Entidades indexadas")
+                    .tag("index", name)
+                    .register(registry));
+
+            rankIndexes.forEach((name, index) -> Gauge.builder("store.index.entries", index, RankIndex::size)
+                    .description("Entidades indexadas")
+                    .tag("index", name)
+                    .register(registry));
+
+            changeLogs.forEach((name, log) -> Gauge.builder("store.tombstones", log, ChangeLog::tombstoneCount)
+                    .description("Entidades eliminadas que se recuerdan para la sincronización por cambios")
+                    .tag("index", name)
+                    .register(registry));
+
+            invertedIndexes.forEach((name, index) -> {
+                Gauge.builder("store.index.entries", index, InvertedIndex::size)
+                        .description("Entidades indexadas")
+                        .tag("index", name)
+                        .register(registry);
+                Gauge.builder("store.index.terms", index, InvertedIndex::termCount)
+                        .description("Valores distintos en el índice")
+                        .tag("index", name)
+                        .register(registry);
+            });
+
+            nameIndexes.forEach((name, index) -> {
+                Gauge.builder("search.index.entries", index, NGramIndex::size)
+                        .description("Textos indexados")
+                        .tag("index", name)
+                        .register(registry);
+                Gauge.builder("search.index.grams", index, NGramIndex::gramCount)
+                        .description("Trigramas distintos en el índice")
+                        .tag("index", name)
+                        .register(registry);
+                DistributionSummary candidates = DistributionSummary.builder("search.candidates")
+                        .description("Textos comprobados por búsqueda")
+                        .tag("index", name)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .register(registry);
+                index.setCandidateListener(candidates::record);
+            });
+        };
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.restapidemo.config;
+
+import com.example.restapidemo.model.Center;
+import com.example.restapidemo.model.Identifiable;
+import com.example.restapidemo.model.Patient;
+import com.example.restapidemo.model.Profile;
+import com.example.restapidemo.model.User;
+import com.example.restapidemo.persistence.PersistenceManager;
+import com.example.restapidemo.store.ChangeLog;
+import com.example.restapidemo.store.HashIndex;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.InvertedIndex;
+import com.example.restapidemo.store.NGramIndex;
+import com.example.restapidemo.store.RankIndex;
+import com.example.restapidemo.store.StoreListener;
+import com.example.restapidemo.store.TextNormalizer;
+import com.example.restapidemo.store.UserCenterIndex;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Configuración de los almacenes en memoria y sus índices
+ * Cada almacén es un bean único compartido por todos los controladores que lo necesiten.
+ * Al crearlo se recupera su estado desde disco, antes de que nadie lo use
+ */
+@Configuration
+public class StoreConfig {
+
+    // Los índices ordenados permiten "sort" en los endpoints /all; los nombres
+    // se ordenan por su clave normalizada para no separar "Álvaro" de "Alberto"
+
+    @Bean
+    public InMemoryStore<User> userStore(PersistenceManager persistence) {
+        InMemoryStore<User> store = new InMemoryStore<>("users");
+        store.addSortIndex("nombre", u -> TextNormalizer.fold(u.getNombre()), Function.identity());
+        store.addSortIndex("edad", User::getEdad, Integer::valueOf);
+        store.addSortIndex("puntuacion", User::getPuntuacion, Integer::valueOf);
+        persistence.attach(store, User.class);
+        return store;
+    }
+
+    @Bean
+    public InMemoryStore<Patient> patientStore(PersistenceManager persistence) {
+        InMemoryStore<Patient> store = new InMemoryStore<>("patients");
+        store.addSortIndex("nombre", p -> TextNormalizer.fold(p.getNombre()), Function.identity());
+        store.addSortIndex("apellido1", p -> TextNormalizer.fold(p.getApellido1()), Function.identity());
+        // Días desde 1970: las búsquedas por fecha de nacimiento o edad son rangos de este índice
+        store.addSortIndex("fechaDeNacimiento", Patient::getDiaDeNacimiento, Integer::valueOf);
+        persistence.attach(store, Patient.class);
+        return store;
+    }
+
+    @Bean
+    public InMemoryStore<Center> centerStore(PersistenceManager persistence) {
+        InMemoryStore<Center> store = new InMemoryStore<>("centers");
+        store.addSortIndex("nombre", c -> TextNormalizer.fold(c.getNombre()), Function.identity());
+        persistence.attach(store, Center.class);
+        return store;
+    }
+
+    @Bean
+    public InMemoryStore<Profile> profileStore(PersistenceManager persistence) {
+        InMemoryStore<Profile> store = new InMemoryStore<>("profiles");
+        store.addSortIndex("nombre", p -> TextNormalizer.fold(p.getNombre()), Function.identity());
+        persistence.attach(store, Profile.class);
+        return store;
+    }
+
+    @Bean
+    public UserCenterIndex userCenterIndex(PersistenceManager persistence,
+                                           @Value("${app.sync.max-tombstones:100000}") int maxTombstones) {
+        UserCenterIndex index = new UserCenterIndex(maxTombstones);
+        persistence.attach(index);
+        return index;
+    }
+
+    // Índices de búsqueda por nombre: se registran en su almacén y se mantienen solos
+
+    @Bean
+    public NGramIndex<User> userNameIndex(InMemoryStore<User> userStore) {
+        return register(userStore, new NGramIndex<>(User::getNombre));
+    }
+
+    @Bean
+    public NGramIndex<Patient> patientNameIndex(InMemoryStore<Patient> patientStore) {
+        // Se busca sobre el nombre completo para que "garcia lopez" también encuentre
+        return register(patientStore, new NGramIndex<>(patient -> String.join(" ",
+                Objects.toString(patient.getNombre(), ""),
+                Objects.toString(patient.getApellido1(), ""),
+                Objects.toString(patient.getApellido2(), ""))));
+    }
+
+    @Bean
+    public NGramIndex<Center> centerNameIndex(InMemoryStore<Center> centerStore) {
+        return register(centerStore, new NGramIndex<>(Center::getNombre));
+    }
+
+    @Bean
+    public NGramIndex<Profile> profileNameIndex(InMemoryStore<Profile> profileStore) {
+        return register(profileStore, new NGramIndex<>(Profile::getNombre));
+    }
+
+    // Índice de emails para el login: sin distinguir mayúsculas y con filtro de Bloom
+    // para descartar sin bloquear los emails que no existen
+
+    @Bean
+    public HashIndex<User, String> userEmailIndex(InMemoryStore<User> userStore) {
+        return register(userStore, new HashIndex<>(
+                user -> user.getEmail() == null ? null : TextNormalizer.foldCase(user.getEmail()), 0.01));
+    }
+
+    // Clasificación de usuarios por puntuación, para el ranking del dashboard
+
+    @Bean
+    public RankIndex<User> userScoreRank(InMemoryStore<User> userStore) {
+        return register(userStore, new RankIndex<>(User::getPuntuacion));
+    }
+
+    // Índice de diagnósticos para las búsquedas de pacientes por varios diagnósticos
+
+    @Bean
+    public InvertedIndex<Patient> patientDiagnosisIndex(InMemoryStore<Patient> patientStore) {
+        return register(patientStore, new InvertedIndex<>(Patient::getDiagnosticos, TextNormalizer::fold));
+    }
+
+    // Perfiles de cada usuario. idUsuario es un int y 0 significa que el perfil no tiene usuario
+
+    @Bean
+    public HashIndex<Profile, Long> profileUserIndex(InMemoryStore<Profile> profileStore) {
+        return register(profileStore, new HashIndex<>(
+                profile -> profile.getIdUsuario() == 0 ? null : (long) profile.getIdUsuario()));
+    }
+
+    // Versión de modificación de cada entidad para los endpoints /changes
+
+    @Bean
+    public ChangeLog<User> userChangeLog(InMemoryStore<User> userStore,
+                                         @Value("${app.sync.max-tombstones:100000}") int maxTombstones) {
+        return register(userStore, new ChangeLog<>(maxTombstones));
+    }
+
+    @Bean
+    public ChangeLog<Patient> patientChangeLog(InMemoryStore<Patient> patientStore,
+                                               @Value("${app.sync.max-tombstones:100000}") int maxTombstones) {
+        return register(patientStore, new ChangeLog<>(maxTombstones));
+    }
+
+    @Bean
+    public ChangeLog<Center> centerChangeLog(InMemoryStore<Center> centerStore,
+                                             @Value("${app.sync.max-tombstones:100000}") int maxTombstones) {
+        return register(centerStore, new ChangeLog<>(maxTombstones));
+    }
+
+    @Bean
+    public ChangeLog<Profile> profileChangeLog(InMemoryStore<Profile> profileStore,
+                                               @Value("${app.sync.max-tombstones:100000}") int maxTombstones) {
+        return register(profileStore, new ChangeLog<>(maxTombstones));
+    }
+
+    private static <T extends Identifiable, I extends StoreListener<T>> I register(
+            InMemoryStore<T> store, I index) {
+        store.addListener(index);
+        return index;
+    }
+}
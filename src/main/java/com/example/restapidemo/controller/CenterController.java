@@ -1,18 +1,31 @@
 package com.example.restapidemo.controller;
 
 import com.example.restapidemo.model.Center;
+import com.example.restapidemo.store.ChangeLog;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.NGramIndex;
+import com.example.restapidemo.web.BatchItem;
+import com.example.restapidemo.web.BatchItemResult;
+import com.example.restapidemo.web.BatchRequests;
+import com.example.restapidemo.web.ChangeSet;
+import com.example.restapidemo.web.ChangeSets;
+import com.example.restapidemo.web.ETags;
+import com.example.restapidemo.web.PageResponses;
+import com.example.restapidemo.web.ResponseCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Controlador REST para gestionar Centros
@@ -23,18 +36,34 @@ import java.util.Optional;
 @Tag(name = "Centers", description = "API para gestionar centros")
 public class CenterController {
 
-    // Simulamos una base de datos en memoria con una lista
-    private final List<Center> centers = new ArrayList<>();
-    private Long nextId = 1L;
+    // Almacén en memoria indexado por ID (compartido y seguro entre hilos)
+    private final InMemoryStore<Center> centers;
+
+    // Índice de trigramas sobre el nombre, mantenido por el propio almacén
+    private final NGramIndex<Center> nameIndex;
+
+    // Versión de modificación de cada entidad, para la sincronización por cambios
+    private final ChangeLog<Center> changeLog;
+
+    // Respuestas ya serializadas del listado completo y de cada centro
+    private final ResponseCache responseCache;
 
     // Constructor que inicializa algunos perfiles de ejemplo
-    public CenterController() {
-        centers.add(new Center(nextId++, "Centro 1", "Est reprehenderit incididunt ullamco mollit. Culpa ad qui id cillum excepteur. Dolor incididunt aliquip reprehenderit do culpa ut sunt ea. Excepteur esse ea occaecat tempor commodo voluptate cillum nulla. Est ad esse id qui in consequat sit aliqua sunt incididunt."));
-        centers.add(new Center(nextId++, "Centro 2", "Qui elit ullamco tempor ex aute incididunt. Minim consectetur do enim fugiat. Aliqua sint mollit nisi sint ex elit enim enim ipsum culpa. Reprehenderit eiusmod culpa ipsum quis ipsum quis occaecat. Ipsum enim veniam esse qui occaecat duis non aliquip. Eu qui cillum sit laboris tempor qui reprehenderit mollit non magna magna culpa velit qui. Sit officia qui amet qui cupidatat sit ad."));
-        centers.add(new Center(nextId++, "Centro 3", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui."));
-        centers.add(new Center(nextId++, "Centro 4", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui."));
-        centers.add(new Center(nextId++, "Centro 5", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui."));
-        centers.add(new Center(nextId++, "Centro 6", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui."));
+    public CenterController(InMemoryStore<Center> centers, NGramIndex<Center> nameIndex, ChangeLog<Center> changeLog,
+                            ResponseCache responseCache) {
+        this.centers = centers;
+        this.changeLog = changeLog;
+        this.nameIndex = nameIndex;
+        this.responseCache = responseCache;
+        // Datos de ejemplo solo la primera vez: después se recuperan del disco
+        if (centers.isPristine()) {
+            centers.create(new Center(null, "Centro 1", "Est reprehenderit incididunt ullamco mollit. Culpa ad qui id cillum excepteur. Dolor incididunt aliquip reprehenderit do culpa ut sunt ea. Excepteur esse ea occaecat tempor commodo voluptate cillum nulla. Est ad esse id qui in consequat sit aliqua sunt incididunt."));
+            centers.create(new Center(null, "Centro 2", "Qui elit ullamco tempor ex aute incididunt. Minim consectetur do enim fugiat. Aliqua sint mollit nisi sint ex elit enim enim ipsum culpa. Reprehenderit eiusmod culpa ipsum quis ipsum quis occaecat. Ipsum enim veniam esse qui occaecat duis non aliquip. Eu qui cillum sit laboris tempor qui reprehenderit mollit non magna magna culpa velit qui. Sit officia qui amet qui cupidatat sit ad."));
+            centers.create(new Center(null, "Centro 3", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui."));
+            centers.create(new Center(null, "Centro 4", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui."));
+            centers.create(new Center(null, "Centro 5", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui."));
+            centers.create(new Center(null, "Centro 6", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui."));
+        }
     }
 
     /**
@@ -44,18 +73,31 @@ public class CenterController {
     @Operation(summary = "Obtener todos los perfiles", description = "Retorna una lista con todos los perfiles registrados en el sistema")
     @ApiResponse(responseCode = "200", description = "Lista de perfiles obtenida exitosamente")
     public ResponseEntity<List<Center>> getAllCenters() {
-        return ResponseEntity.ok(centers);
+        return ResponseEntity.ok(centers.findAll());
     }
 
     /**
      * GET - Obtener todos los perfiles b
      * Ejemplo: GET http://localhost:8080/api/centers
+     * Paginado: GET http://localhost:8080/api/centers/all?limit=20&sort=nombre y después &after=<X-Next-Cursor>
+     * Sin parámetros se responde con la lista ya serializada mientras no cambie ningún centro
      */
     @GetMapping("/all")
     @Operation(summary = "Obtener todos los perfiles b", description = "Retorna una lista con todos los perfiles registrados en el sistema")
-    @ApiResponse(responseCode = "200", description = "Lista de perfiles obtenida exitosamente")
-    public ResponseEntity<List<Center>> getAllCentersB() {
-        return ResponseEntity.ok(centers);
+    @ApiResponse(responseCode = "200", description = "Lista de perfiles obtenida exitosamente",
+            content = @Content(array = @ArraySchema(schema = @Schema(implementation = Center.class))))
+    public ResponseEntity<?> getAllCentersB(
+            @Parameter(description = "Número máximo de centros a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor de la página anterior (cabecera X-Next-Cursor)") @RequestParam(required = false) String after,
+            @Parameter(description = "Campo por el que ordenar: id o nombre") @RequestParam(required = false) String sort,
+            @Parameter(description = "Ordenar de mayor a menor") @RequestParam(defaultValue = "false") boolean desc,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return ETags.of(ETags.collection("centers", changeLog.version()), () -> {
+            if (limit == null && after == null && sort == null && !desc) {
+                return responseCache.get("centers:all", centers.version(), acceptEncoding, centers::findAll);
+            }
+            return PageResponses.of(() -> centers.findPage(sort, after, limit, desc));
+        });
     }
 
     /**
@@ -65,18 +107,16 @@ public class CenterController {
     @GetMapping("/{id}")
     @Operation(summary = "Obtener un centro por ID", description = "Retorna la información de un centro específico basándose en su ID")
     @ApiResponses({
-            @ApiResponse(responseCode = "200", description = "Centro encontrado"),
+            @ApiResponse(responseCode = "200", description = "Centro encontrado",
+                    content = @Content(schema = @Schema(implementation = Center.class))),
             @ApiResponse(responseCode = "404", description = "Centro no encontrado")
     })
-    public ResponseEntity<Center> getCenterById(
-            @Parameter(description = "ID del centro a buscar", required = true) @PathVariable Long id) {
-
-        Optional<Center> Center = centers.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst();
+    public ResponseEntity<byte[]> getCenterById(
+            @Parameter(description = "ID del centro a buscar", required = true) @PathVariable Long id,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
 
-        return Center.map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+        return ETags.of(ETags.entity("centers", id, changeLog.versionOf(id)),
+                () -> responseCache.find("centers:" + id, centers.version(), acceptEncoding, () -> centers.findById(id)));
     }
 
     /**
@@ -84,20 +124,39 @@ public class CenterController {
      * Ejemplo: GET http://localhost:8080/api/centers/search?nombre=Juan
      */
     @GetMapping("/search")
-    @Operation(summary = "Buscar perfiles por nombre", description = "Busca perfiles cuyo nombre contenga el texto especificado (case-insensitive)")
+    @Operation(summary = "Buscar perfiles por nombre", description = "Busca perfiles cuyo nombre contenga el texto especificado (sin distinguir mayúsculas ni tildes)")
     @ApiResponse(responseCode = "200", description = "Búsqueda realizada exitosamente")
     public ResponseEntity<List<Center>> searchCentersByName(
             @Parameter(description = "Texto a buscar en el nombre del centro") @RequestParam(required = false) String nombre) {
 
-        if (nombre == null || nombre.trim().isEmpty()) {
-            return ResponseEntity.ok(centers);
-        }
+        return ETags.of(ETags.collection("centers", changeLog.version()), () -> {
+            if (nombre == null || nombre.trim().isEmpty()) {
+                return ResponseEntity.ok(centers.findAll());
+            }
+
+            List<Center> filteredCenters = centers.findAllById(nameIndex.search(nombre));
 
-        List<Center> filteredCenters = centers.stream()
-                .filter(u -> u.getNombre().toLowerCase().contains(nombre.toLowerCase()))
-                .toList();
+            return ResponseEntity.ok(filteredCenters);
+        });
+    }
+
+    /**
+     * GET - Obtener los cambios desde una versión
+     * Ejemplo: GET http://localhost:8080/api/centers/changes?since=0
+     * Después: GET http://localhost:8080/api/centers/changes?since=<version de la respuesta anterior>
+     */
+    @GetMapping("/changes")
+    @Operation(summary = "Obtener los cambios desde una versión", description = "Retorna los centros creados o modificados y los IDs de los centros eliminados después de la versión indicada. "
+            + "Si no se conocen todas las bajas desde esa versión, reinicio es true y modificados contiene todos: hay que descartar los datos locales")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Cambios obtenidos exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Versión o límite no válidos")
+    })
+    public ResponseEntity<ChangeSet<Center, Long>> getCenterChanges(
+            @Parameter(description = "Versión recibida en la última sincronización (0 la primera vez)") @RequestParam(defaultValue = "0") long since,
+            @Parameter(description = "Número máximo de cambios a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit) {
 
-        return ResponseEntity.ok(filteredCenters);
+        return ChangeSets.of(since, limit, changeLog::since);
     }
 
     /**
@@ -112,8 +171,7 @@ public class CenterController {
             @ApiResponse(responseCode = "400", description = "Datos de centro inválidos")
     })
     public ResponseEntity<Center> createCenter(@RequestBody Center Center) {
-        Center.setId(nextId++);
-        centers.add(Center);
+        centers.create(Center);
         return ResponseEntity.status(HttpStatus.CREATED).body(Center);
     }
 
@@ -133,18 +191,32 @@ public class CenterController {
             @Parameter(description = "ID del centro a actualizar", required = true) @PathVariable Long id,
             @RequestBody Center updatedCenter) {
 
-        Optional<Center> existingCenter = centers.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst();
+        return centers.update(id, center -> merge(center, updatedCenter))
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-        if (existingCenter.isPresent()) {
-            Center Center = existingCenter.get();
-            Center.setNombre(updatedCenter.getNombre());
-            Center.setDescripcion(updatedCenter.getDescripcion());
-            return ResponseEntity.ok(Center);
-        }
+    /**
+     * POST - Crear, actualizar y eliminar varios centros en una sola petición
+     * Ejemplo: POST http://localhost:8080/api/centers/batch
+     * Body: [{ "op": "create", "data": { "nombre": "Centro Norte" } }, { "op": "update", "id": 2, "data": { ... } }, { "op": "delete", "id": 3 }]
+     * Devuelve un resultado por operación, en el mismo orden, con el código que habría devuelto por separado
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "Operaciones en lote sobre centros", description = "Aplica varias altas, actualizaciones y bajas juntas y devuelve el resultado de cada una")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Lote aplicado; cada operación trae su propio código"),
+            @ApiResponse(responseCode = "400", description = "Lote vacío"),
+            @ApiResponse(responseCode = "413", description = "Demasiadas operaciones en un lote")
+    })
+    public ResponseEntity<List<BatchItemResult<Center>>> batchCenters(@RequestBody BatchItem<Center>[] items) {
+        return BatchRequests.apply(centers, items, CenterController::merge);
+    }
 
-        return ResponseEntity.notFound().build();
+    // Campos que se pueden cambiar con PUT (y en las actualizaciones en lote)
+    private static void merge(Center center, Center updatedCenter) {
+        center.setNombre(updatedCenter.getNombre());
+        center.setDescripcion(updatedCenter.getDescripcion());
     }
 
     /**
@@ -162,7 +234,7 @@ public class CenterController {
 
         // TODO: hacer que se mire si el centro se utiliza por algun usuario
 
-        boolean removed = centers.removeIf(u -> u.getId().equals(id));
+        boolean removed = centers.delete(id);
 
         if (removed) {
             return ResponseEntity.noContent().build();
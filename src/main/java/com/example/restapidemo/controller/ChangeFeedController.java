@@ -0,0 +1,73 @@
+package com.example.restapidemo.controller;
+
+import com.example.restapidemo.web.ChangeFeed;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Controlador REST para recibir los cambios de las entidades en tiempo real
+ * Este controlador abre un canal Server-Sent Events con cada alta, actualización y baja
+ */
+@RestController
+@RequestMapping("/api/changes")
+@Tag(name = "Changes", description = "API para recibir los cambios de las entidades en tiempo real")
+public class ChangeFeedController {
+
+    private static final Set<String> STORES = Set.of("users", "patients", "centers", "profiles", "usersCenters");
+
+    private final ChangeFeed changeFeed;
+
+    public ChangeFeedController(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * GET - Recibir los cambios según se producen
+     * Ejemplo: GET http://localhost:8080/api/changes
+     * Solo algunos almacenes: GET http://localhost:8080/api/changes?stores=users,profiles
+     * Al reconectar, el navegador envía Last-Event-ID y se reenvían los cambios perdidos
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "Recibir los cambios de las entidades",
+            description = "Canal Server-Sent Events: un evento \"change\" por cada alta, actualización o baja, con su número de secuencia como id. "
+                    + "Si los cambios pedidos ya no se guardan se envía un evento \"reset\" y hay que recargar los datos")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Canal abierto"),
+            @ApiResponse(responseCode = "400", description = "Almacén o secuencia no válidos")
+    })
+    public ResponseEntity<SseEmitter> subscribe(
+            @Parameter(description = "Almacenes separados por comas: users, patients, centers, profiles, usersCenters (todos si se omite)") @RequestParam(required = false) String stores,
+            @Parameter(description = "Último cambio recibido; se envían los siguientes") @RequestParam(required = false) Long since,
+            @Parameter(hidden = true) @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        Set<String> filter = stores == null ? Set.of() : Arrays.stream(stores.split(","))
+                .map(String::strip)
+                .filter(store -> !store.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+        if (!STORES.containsAll(filter)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Long lastSeq = since;
+        if (lastEventId != null && !lastEventId.isBlank()) {
+            try {
+                lastSeq = Long.valueOf(lastEventId.strip());
+            } catch (NumberFormatException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        if (lastSeq != null && lastSeq < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(changeFeed.subscribe(filter, lastSeq));
+    }
+}
@@ -1,52 +1,113 @@
 package com.example.restapidemo.controller;
 
+import com.example.restapidemo.auth.PasswordService;
 import com.example.restapidemo.model.Login;
-import com.example.restapidemo.model.Profile;
+import com.example.restapidemo.model.User;
+import com.example.restapidemo.store.HashIndex;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.TextNormalizer;
+import com.example.restapidemo.web.TokenBucketLimiter;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 
 /**
  * Controlador REST para gestionar logins
  * Este controlador maneja todas las peticiones HTTP relacionadas con logins
+ *
+ * El email se busca en los usuarios reales con un índice por email (sin
+ * distinguir mayúsculas). Antes de llegar al índice, cada petición pasa por
+ * un límite de intentos por IP, un filtro de Bloom que descarta los emails
+ * que no existen y un límite de intentos por email. Al pasar el límite por
+ * email se responde 401 y no 429, igual que a un email que no existe: si no,
+ * el 429 delataría qué emails tienen cuenta
+ *
+ * La contraseña se comprueba en el pool de {@link PasswordService}: la
+ * respuesta es asíncrona y el hilo de la petición queda libre mientras tanto.
+ * Los usuarios sin contraseña guardada (como los de ejemplo) no pueden
+ * entrar hasta que se les asigne una con PUT /api/users/{id}
  */
 @RestController
 @RequestMapping("/api")
 @Tag(name = "Login", description = "API para gestionar el inicio de sesión")
 public class LoginController {
 
-    // Lista de emails validos hardcodeada para tests
-    private static final String[] VALID_USERS = {
-        "juan@example.com", "jose@example.com", "pepito@example.com", "admin"
-    };
-    
+    private final InMemoryStore<User> users;
+
+    // Índice email -> usuario, mantenido por el propio almacén
+    private final HashIndex<User, String> emailIndex;
+
+    private final PasswordService passwords;
+
+    private final TokenBucketLimiter ipLimiter;
+    private final TokenBucketLimiter emailLimiter;
+
+    public LoginController(InMemoryStore<User> users, HashIndex<User, String> emailIndex, PasswordService passwords,
+                           @Value("${app.login.ip-burst:30}") int ipBurst,
+                           @Value("${app.login.ip-per-minute:120}") int ipPerMinute,
+                           @Value("${app.login.email-burst:5}") int emailBurst,
+                           @Value("${app.login.email-per-minute:10}") int emailPerMinute) {
+        this.users = users;
+        this.emailIndex = emailIndex;
+        this.passwords = passwords;
+        this.ipLimiter = new TokenBucketLimiter(ipBurst, ipPerMinute);
+        this.emailLimiter = new TokenBucketLimiter(emailBurst, emailPerMinute);
+    }
+
     @PostMapping("/login")
     @Operation(summary = "Valida un login de un usuario")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Login acceptado"),
-            @ApiResponse(responseCode = "401", description = "Login no autorizado")
+            @ApiResponse(responseCode = "401", description = "Login no autorizado"),
+            @ApiResponse(responseCode = "429", description = "Demasiados intentos desde la misma IP, hay que esperar"),
+            @ApiResponse(responseCode = "503", description = "Demasiados logins a la vez, hay que reintentar")
     })
-    public ResponseEntity<Boolean> login(@RequestBody Login loginRequest) {
-        
-        String mail = loginRequest.getEmail();
+    public CompletableFuture<ResponseEntity<Boolean>> login(@RequestBody Login loginRequest, HttpServletRequest request) {
+
+        if (!ipLimiter.tryAcquire(request.getRemoteAddr())) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(false));
+        }
 
-        // mirar si existe en el array
-        for (String validUser : VALID_USERS) {
+        String mail = TextNormalizer.foldCase(loginRequest.getEmail());
 
-            if (validUser.equalsIgnoreCase(mail)) {
+        // Emails que no existen: se descartan sin tocar el índice ni el límite por email
+        if (mail.isEmpty() || !emailIndex.mightContain(mail)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(false));
+        }
+
+        // Sin intentos para este email: la misma respuesta que a un email que no existe
+        if (!emailLimiter.tryAcquire(mail)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(false));
+        }
 
-                return ResponseEntity.status(HttpStatus.OK).body(true);
-            }
+        long[] ids = emailIndex.find(mail);
+        Optional<User> user = ids.length > 0 ? users.findById(ids[0]) : Optional.empty();
+        if (user.isEmpty() || user.get().getPassword() == null) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(false));
         }
 
-        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(false);
+        return passwords.verify(mail, loginRequest.getPass(), user.get().getPassword())
+                .thenApply(valid -> ResponseEntity.status(valid ? HttpStatus.OK : HttpStatus.UNAUTHORIZED).body(valid))
+                .exceptionally(error -> {
+                    // Solo el pool lleno es un 503; cualquier otro error acaba en 500
+                    if (!PasswordService.isBusy(error)) {
+                        throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+                    }
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(false);
+                });
         // return ResponseEntity.status(HttpStatus.I_AM_A_TEAPOT).body(false);
     }
 
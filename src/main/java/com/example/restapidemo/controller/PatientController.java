@@ -1,6 +1,21 @@
 package com.example.restapidemo.controller;
 
+import com.example.restapidemo.model.Dates;
 import com.example.restapidemo.model.Patient;
+import com.example.restapidemo.store.ChangeLog;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.InvertedIndex;
+import com.example.restapidemo.store.NGramIndex;
+import com.example.restapidemo.store.Page;
+import com.example.restapidemo.web.BatchItem;
+import com.example.restapidemo.web.BatchItemResult;
+import com.example.restapidemo.web.BatchRequests;
+import com.example.restapidemo.web.ChangeSet;
+import com.example.restapidemo.web.ChangeSets;
+import com.example.restapidemo.web.ETags;
+import com.example.restapidemo.web.NdjsonExport;
+import com.example.restapidemo.web.PageResponses;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
@@ -9,25 +24,45 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.util.ArrayList;
+import java.time.LocalDate;
 import java.util.List;
-import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/patients")
 @Tag(name = "Patients", description = "API para gestionar pacientes")
 public class PatientController {
 
-    private final List<Patient> patients = new ArrayList<>();
-    private Long nextId = 1L;
+    // Almacén en memoria indexado por ID (compartido y seguro entre hilos)
+    private final InMemoryStore<Patient> patients;
 
-    public PatientController() {
+    // Índice de trigramas sobre nombre y apellidos, mantenido por el propio almacén
+    private final NGramIndex<Patient> nameIndex;
 
-        patients.add(new Patient(nextId++, "Paciente 1", "apellido1", "apellido2", "1/1/2000", "Hombre", "45678iugt6", 12121212, "a@a.a", "#8dff3cff", new String[] {"asdsa", "asdasd"}, new String[] {"Es normal, parece."}));
-        patients.add(new Patient(nextId++, "Paciente 2", "apellido1", "apellido2", "1/1/2000", "Hombre", "567kytrtht", 12121212, "b@b.b", "#8dff3cff", new String[] {"asdsa", "asdasd"}, new String[] {"Necessita toda una fábrica para cubrir su consumo."}));
-        patients.add(new Patient(nextId++, "Paciente 3", "apellido1", "apellido2", "1/1/2000", "Hombre", "uytyt43546u", 12121212, "c@c.c", "#8dff3cff", new String[] {"asdsa", "asdasd"}, new String[] {"Se ha roto el pie como 3 veces."}));
-        patients.add(new Patient(nextId++, "Paciente 4", "apellido1", "apellido2", "1/1/2000", "Hombre", "43653yrg423", 12121212, "d@d.d", "#8dff3cff", new String[] {"asdsa", "asdasd"}, new String[] {"Sin observaciones."}));
+    // Índice de diagnósticos -> pacientes, para las búsquedas por varios diagnósticos
+    private final InvertedIndex<Patient> diagnosisIndex;
+
+    // Versión de modificación de cada entidad, para la sincronización por cambios
+    private final ChangeLog<Patient> changeLog;
+
+    private final ObjectMapper objectMapper;
+
+    public PatientController(InMemoryStore<Patient> patients, NGramIndex<Patient> nameIndex,
+                             InvertedIndex<Patient> diagnosisIndex, ChangeLog<Patient> changeLog, ObjectMapper objectMapper) {
+        this.patients = patients;
+        this.changeLog = changeLog;
+        this.nameIndex = nameIndex;
+        this.diagnosisIndex = diagnosisIndex;
+        this.objectMapper = objectMapper;
+
+        // Datos de ejemplo solo la primera vez: después se recuperan del disco
+        if (patients.isPristine()) {
+            patients.create(new Patient(null, "Paciente 1", "apellido1", "apellido2", "1/1/2000", "Hombre", "45678iugt6", 12121212, "a@a.a", "#8dff3cff", new String[] {"asdsa", "asdasd"}, new String[] {"Es normal, parece."}));
+            patients.create(new Patient(null, "Paciente 2", "apellido1", "apellido2", "1/1/2000", "Hombre", "567kytrtht", 12121212, "b@b.b", "#8dff3cff", new String[] {"asdsa", "asdasd"}, new String[] {"Necessita toda una fábrica para cubrir su consumo."}));
+            patients.create(new Patient(null, "Paciente 3", "apellido1", "apellido2", "1/1/2000", "Hombre", "uytyt43546u", 12121212, "c@c.c", "#8dff3cff", new String[] {"asdsa", "asdasd"}, new String[] {"Se ha roto el pie como 3 veces."}));
+            patients.create(new Patient(null, "Paciente 4", "apellido1", "apellido2", "1/1/2000", "Hombre", "43653yrg423", 12121212, "d@d.d", "#8dff3cff", new String[] {"asdsa", "asdasd"}, new String[] {"Sin observaciones."}));
+        }
 
 
         // patients.add(new Patient(nextId++, "Paciente 1", "Est reprehenderit incididunt ullamco mollit.", 32, 2342354, "Es normal, parece.", ""));
@@ -42,15 +77,28 @@ public class PatientController {
     @Operation(summary = "Obtener todos los pacientes", description = "Retorna una lista con todos los pacientes registrados en el sistema")
     @ApiResponse(responseCode = "200", description = "Lista de pacientes obtenida exitosamente")
     public ResponseEntity<List<Patient>> getAllPatients() {
-        return ResponseEntity.ok(patients);
+        return ResponseEntity.ok(patients.findAll());
     }
 
    
     @GetMapping("/all")
     @Operation(summary = "Obtener todos los pacientes", description = "Retorna una lista con todos los pacientes registrados en el sistema")
     @ApiResponse(responseCode = "200", description = "Lista de pacientes obtenida exitosamente")
-    public ResponseEntity<List<Patient>> getAllPatientsB() {
-        return ResponseEntity.ok(patients);
+    public ResponseEntity<List<Patient>> getAllPatientsB(
+            @Parameter(description = "Número máximo de pacientes a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor de la página anterior (cabecera X-Next-Cursor)") @RequestParam(required = false) String after,
+            @Parameter(description = "Campo por el que ordenar: id, nombre, apellido1 o fechaDeNacimiento") @RequestParam(required = false) String sort,
+            @Parameter(description = "Ordenar de mayor a menor") @RequestParam(defaultValue = "false") boolean desc) {
+        return ETags.of(ETags.collection("patients", changeLog.version()),
+                () -> PageResponses.of(() -> patients.findPage(sort, after, limit, desc)));
+    }
+
+
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @Operation(summary = "Exportar todos los pacientes", description = "Escribe los pacientes uno a uno en formato NDJSON sin cargar toda la respuesta en memoria")
+    @ApiResponse(responseCode = "200", description = "Exportación iniciada")
+    public ResponseEntity<StreamingResponseBody> exportPatients() {
+        return NdjsonExport.of(objectMapper, Patient.class, "patients.ndjson", patients.iterateInOrder());
     }
 
    
@@ -63,46 +111,133 @@ public class PatientController {
     public ResponseEntity<Patient> getPatientById(
             @Parameter(description = "ID del paciente a buscar", required = true) @PathVariable Long id) {
 
-        Optional<Patient> Patient = patients.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst();
-
-        return Patient.map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+        return ETags.of(ETags.entity("patients", id, changeLog.versionOf(id)), () -> patients.findById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build()));
     }
 
  
     @GetMapping("/search")
-    @Operation(summary = "Buscar pacientes por nombre", description = "Busca pacientes cuyo nombre contenga el texto especificado (case-insensitive)")
+    @Operation(summary = "Buscar pacientes por nombre", description = "Busca pacientes cuyo nombre o apellidos contengan el texto especificado (sin distinguir mayúsculas ni tildes)")
     @ApiResponse(responseCode = "200", description = "Búsqueda realizada exitosamente")
     public ResponseEntity<List<Patient>> searchPatientsByName(
             @Parameter(description = "Texto a buscar en el nombre del paciente") @RequestParam(required = false) String nombre,
             @Parameter(description = "Texto a buscar en la descripción del paciente") @RequestParam(required = false) String descripcion,
             @Parameter(description = "Código corto a buscar") @RequestParam(required = false) Integer numeroCorto) {
 
-        List<Patient> filteredPatients = patients;
+        return ETags.of(ETags.collection("patients", changeLog.version()), () -> {
+            List<Patient> filteredPatients;
 
-        // Solo aplicar filtros si existen
-        if (nombre != null && !nombre.trim().isEmpty()) {
+            // Solo aplicar filtros si existen
+            if (nombre != null && !nombre.trim().isEmpty()) {
 
-            filteredPatients = filteredPatients.stream()
-                .filter(u -> u.getNombre().toLowerCase().contains(nombre.toLowerCase()))
-                .toList();
-        }
+                filteredPatients = patients.findAllById(nameIndex.search(nombre));
+            } else {
+                filteredPatients = patients.findAll();
+            }
+
+            // if (descripcion != null) {
+            //     filteredPatients = filteredPatients.stream()
+            //         .filter(u -> u.getDescripcion().toLowerCase().contains(descripcion.toLowerCase()))
+            //         .toList();
+            // }
 
-        // if (descripcion != null) {
-        //     filteredPatients = filteredPatients.stream()
-        //         .filter(u -> u.getDescripcion().toLowerCase().contains(descripcion.toLowerCase()))
-        //         .toList();
-        // }
-
-        // if (numeroCorto != null) {
-        //     filteredPatients = filteredPatients.stream()
-        //         .filter(u -> u.getNumeroCorto() == numeroCorto)
-        //         .toList();
-        // }
+            // if (numeroCorto != null) {
+            //     filteredPatients = filteredPatients.stream()
+            //         .filter(u -> u.getNumeroCorto() == numeroCorto)
+            //         .toList();
+            // }
        
-        return ResponseEntity.ok(filteredPatients);
+            return ResponseEntity.ok(filteredPatients);
+        });
+    }
+
+
+    /**
+     * GET - Buscar pacientes por diagnóstico
+     * Ejemplo: GET http://localhost:8080/api/patients/byDiagnosis?diagnostico=asma&diagnostico=migraña
+     * Por defecto devuelve los pacientes con todos los diagnósticos; con match=any, los que tienen alguno
+     */
+    @GetMapping("/byDiagnosis")
+    @Operation(summary = "Buscar pacientes por diagnóstico", description = "Devuelve los pacientes que tienen todos los diagnósticos indicados (o alguno, con match=any), sin distinguir mayúsculas ni tildes")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Búsqueda realizada exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Falta el diagnóstico o el valor de match no es válido")
+    })
+    public ResponseEntity<List<Patient>> searchPatientsByDiagnosis(
+            @Parameter(description = "Diagnóstico a buscar; se puede repetir", required = true) @RequestParam List<String> diagnostico,
+            @Parameter(description = "all: todos los diagnósticos; any: alguno de ellos") @RequestParam(defaultValue = "all") String match) {
+
+        if (!"all".equals(match) && !"any".equals(match)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ETags.of(ETags.collection("patients", changeLog.version()), () -> {
+            long[] ids = "all".equals(match) ? diagnosisIndex.findAll(diagnostico) : diagnosisIndex.findAny(diagnostico);
+            return ResponseEntity.ok(patients.findAllById(ids));
+        });
+    }
+
+
+    /**
+     * GET - Buscar pacientes nacidos entre dos fechas (incluidas), ordenados por fecha de nacimiento
+     * Ejemplo: GET http://localhost:8080/api/patients/byBirthDate?from=1/1/1990&to=2000-12-31&limit=50
+     */
+    @GetMapping("/byBirthDate")
+    @Operation(summary = "Buscar pacientes por fecha de nacimiento", description = "Devuelve, ordenados por fecha de nacimiento, los pacientes nacidos entre las dos fechas (incluidas). Las fechas pueden ser día/mes/año o ISO")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Búsqueda realizada exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Fecha, límite o cursor no válidos")
+    })
+    public ResponseEntity<List<Patient>> searchPatientsByBirthDate(
+            @Parameter(description = "Fecha mínima (sin límite si se omite)") @RequestParam(required = false) String from,
+            @Parameter(description = "Fecha máxima (sin límite si se omite)") @RequestParam(required = false) String to,
+            @Parameter(description = "Número máximo de pacientes a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor de la página anterior (cabecera X-Next-Cursor)") @RequestParam(required = false) String after,
+            @Parameter(description = "Ordenar de más reciente a más antiguo") @RequestParam(defaultValue = "false") boolean desc) {
+
+        LocalDate fromDate = Dates.parse(from);
+        LocalDate toDate = Dates.parse(to);
+        if ((from != null && fromDate == null) || (to != null && toDate == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ETags.of(ETags.collection("patients", changeLog.version()),
+                () -> PageResponses.of(() -> findBornBetween(fromDate, toDate, after, limit, desc)));
+    }
+
+    /**
+     * GET - Buscar pacientes por edad (en años cumplidos hoy), ordenados por fecha de nacimiento
+     * Ejemplo: GET http://localhost:8080/api/patients/byAge?min=18&max=30
+     */
+    @GetMapping("/byAge")
+    @Operation(summary = "Buscar pacientes por edad", description = "Devuelve, ordenados por fecha de nacimiento, los pacientes con una edad entre min y max años (incluidos)")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Búsqueda realizada exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Edades, límite o cursor no válidos")
+    })
+    public ResponseEntity<List<Patient>> searchPatientsByAge(
+            @Parameter(description = "Edad mínima (sin límite si se omite)") @RequestParam(required = false) Integer min,
+            @Parameter(description = "Edad máxima (sin límite si se omite)") @RequestParam(required = false) Integer max,
+            @Parameter(description = "Número máximo de pacientes a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor de la página anterior (cabecera X-Next-Cursor)") @RequestParam(required = false) String after,
+            @Parameter(description = "Ordenar de más reciente a más antiguo") @RequestParam(defaultValue = "false") boolean desc) {
+
+        if ((min != null && min < 0) || (max != null && max < 0) || (min != null && max != null && min > max)) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Tener entre min y max años es haber nacido entre hace max+1 años (más un día) y hace min años
+        LocalDate today = LocalDate.now();
+        LocalDate fromDate = max == null ? null : today.minusYears(max + 1L).plusDays(1);
+        LocalDate toDate = min == null ? null : today.minusYears(min);
+        // Las edades cambian con el día aunque no cambie ningún paciente, así que el día va en el ETag
+        return ETags.of(ETags.composite("patients-byAge", today.toEpochDay(), changeLog.version()),
+                () -> PageResponses.of(() -> findBornBetween(fromDate, toDate, after, limit, desc)));
+    }
+
+    private Page<Patient> findBornBetween(LocalDate from, LocalDate to, String after, Integer limit, boolean desc) {
+        return patients.findRange("fechaDeNacimiento",
+                from == null ? null : String.valueOf(from.toEpochDay()),
+                to == null ? null : String.valueOf(to.toEpochDay()),
+                after, limit, desc);
     }
 
 
@@ -113,8 +248,7 @@ public class PatientController {
             @ApiResponse(responseCode = "400", description = "Datos de paciente inválidos")
     })
     public ResponseEntity<Patient> createPatient(@RequestBody Patient Patient) {
-        Patient.setId(nextId++);
-        patients.add(Patient);
+        patients.create(Patient);
         return ResponseEntity.status(HttpStatus.CREATED).body(Patient);
     }
 
@@ -129,18 +263,51 @@ public class PatientController {
             @Parameter(description = "ID del paciente a actualizar", required = true) @PathVariable Long id,
             @RequestBody Patient updatedPatient) {
 
-        Optional<Patient> existingPatient = patients.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst();
+        return patients.update(id, patient -> merge(patient, updatedPatient))
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-        if (existingPatient.isPresent()) {
-            Patient Patient = existingPatient.get();
-            Patient.setNombre(updatedPatient.getNombre());
-            // Patient.setDescripcion(updatedPatient.getDescripcion());
-            return ResponseEntity.ok(Patient);
-        }
+    /**
+     * GET - Obtener los cambios desde una versión
+     * Ejemplo: GET http://localhost:8080/api/patients/changes?since=0
+     * Después: GET http://localhost:8080/api/patients/changes?since=<version de la respuesta anterior>
+     */
+    @GetMapping("/changes")
+    @Operation(summary = "Obtener los cambios desde una versión", description = "Retorna los pacientes creados o modificados y los IDs de los pacientes eliminados después de la versión indicada. "
+            + "Si no se conocen todas las bajas desde esa versión, reinicio es true y modificados contiene todos: hay que descartar los datos locales")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Cambios obtenidos exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Versión o límite no válidos")
+    })
+    public ResponseEntity<ChangeSet<Patient, Long>> getPatientChanges(
+            @Parameter(description = "Versión recibida en la última sincronización (0 la primera vez)") @RequestParam(defaultValue = "0") long since,
+            @Parameter(description = "Número máximo de cambios a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit) {
 
-        return ResponseEntity.notFound().build();
+        return ChangeSets.of(since, limit, changeLog::since);
+    }
+
+    /**
+     * POST - Crear, actualizar y eliminar varios pacientes en una sola petición
+     * Ejemplo: POST http://localhost:8080/api/patients/batch
+     * Body: [{ "op": "create", "data": { "nombre": "Paciente 5" } }, { "op": "update", "id": 2, "data": { ... } }, { "op": "delete", "id": 3 }]
+     * Devuelve un resultado por operación, en el mismo orden, con el código que habría devuelto por separado
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "Operaciones en lote sobre pacientes", description = "Aplica varias altas, actualizaciones y bajas juntas y devuelve el resultado de cada una")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Lote aplicado; cada operación trae su propio código"),
+            @ApiResponse(responseCode = "400", description = "Lote vacío"),
+            @ApiResponse(responseCode = "413", description = "Demasiadas operaciones en un lote")
+    })
+    public ResponseEntity<List<BatchItemResult<Patient>>> batchPatients(@RequestBody BatchItem<Patient>[] items) {
+        return BatchRequests.apply(patients, items, PatientController::merge);
+    }
+
+    // Campos que se pueden cambiar con PUT (y en las actualizaciones en lote)
+    private static void merge(Patient patient, Patient updatedPatient) {
+        patient.setNombre(updatedPatient.getNombre());
+        // Patient.setDescripcion(updatedPatient.getDescripcion());
     }
 
 
@@ -153,7 +320,7 @@ public class PatientController {
     public ResponseEntity<Void> deletePatient(
             @Parameter(description = "ID del paciente a eliminar", required = true) @PathVariable Long id) {
 
-        boolean removed = patients.removeIf(u -> u.getId().equals(id));
+        boolean removed = patients.delete(id);
 
         if (removed) {
             return ResponseEntity.noContent().build();
@@ -1,18 +1,32 @@
 package com.example.restapidemo.controller;
 
 import com.example.restapidemo.model.Profile;
+import com.example.restapidemo.store.HashIndex;
+import com.example.restapidemo.store.ChangeLog;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.NGramIndex;
+import com.example.restapidemo.web.BatchItem;
+import com.example.restapidemo.web.BatchItemResult;
+import com.example.restapidemo.web.BatchRequests;
+import com.example.restapidemo.web.ChangeSet;
+import com.example.restapidemo.web.ChangeSets;
+import com.example.restapidemo.web.ETags;
+import com.example.restapidemo.web.PageResponses;
+import com.example.restapidemo.web.ResponseCache;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Controlador REST para gestionar perfiles
@@ -23,15 +37,36 @@ import java.util.Optional;
 @Tag(name = "Profiles", description = "API para gestionar perfiles")
 public class ProfileController {
 
-    // Simulamos una base de datos en memoria con una lista
-    private final List<Profile> profiles = new ArrayList<>();
-    private Long nextId = 1L;
+    // Almacén en memoria indexado por ID (compartido y seguro entre hilos)
+    private final InMemoryStore<Profile> profiles;
+
+    // Índice de trigramas sobre el nombre, mantenido por el propio almacén
+    private final NGramIndex<Profile> nameIndex;
+
+    // Índice idUsuario -> perfiles, mantenido por el propio almacén
+    private final HashIndex<Profile, Long> userIndex;
+
+    // Versión de modificación de cada entidad, para la sincronización por cambios
+    private final ChangeLog<Profile> changeLog;
+
+    // Respuestas ya serializadas del listado completo y de cada perfil
+    private final ResponseCache responseCache;
 
     // Constructor que inicializa algunos perfiles de ejemplo
-    public ProfileController() {
-        profiles.add(new Profile(nextId++, "Juan Pérez", "Exercitation id minim sint dolor ad. Est proident ipsum amet esse reprehenderit ipsum deserunt est cillum ad do magna. Ut laboris ea elit qui velit Lorem sit irure eiusmod ad est ipsum aliquip. Fugiat excepteur do veniam commodo ipsum dolor laboris dolor laboris deserunt. Pariatur ex deserunt Lorem dolor esse nisi magna ea ipsum.", "juan@example.com", 1));
-        profiles.add(new Profile(nextId++, "María García", "Qui elit ullamco tempor ex aute incididunt. Minim consectetur do enim fugiat. Aliqua sint mollit nisi sint ex elit enim enim ipsum culpa. Reprehenderit eiusmod culpa ipsum quis ipsum quis occaecat. Ipsum enim veniam esse qui occaecat duis non aliquip. Eu qui cillum sit laboris tempor qui reprehenderit mollit non magna magna culpa velit qui. Sit officia qui amet qui cupidatat sit ad.", "maria@example.com", 2));
-        profiles.add(new Profile(nextId++, "Carlos López", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui.", "carlos@example.com", 3));
+    public ProfileController(InMemoryStore<Profile> profiles, NGramIndex<Profile> nameIndex,
+                             HashIndex<Profile, Long> userIndex, ChangeLog<Profile> changeLog,
+                             ResponseCache responseCache) {
+        this.profiles = profiles;
+        this.changeLog = changeLog;
+        this.nameIndex = nameIndex;
+        this.userIndex = userIndex;
+        this.responseCache = responseCache;
+        // Datos de ejemplo solo la primera vez: después se recuperan del disco
+        if (profiles.isPristine()) {
+            profiles.create(new Profile(null, "Juan Pérez", "Exercitation id minim sint dolor ad. Est proident ipsum amet esse reprehenderit ipsum deserunt est cillum ad do magna. Ut laboris ea elit qui velit Lorem sit irure eiusmod ad est ipsum aliquip. Fugiat excepteur do veniam commodo ipsum dolor laboris dolor laboris deserunt. Pariatur ex deserunt Lorem dolor esse nisi magna ea ipsum.", "juan@example.com", 1));
+            profiles.create(new Profile(null, "María García", "Qui elit ullamco tempor ex aute incididunt. Minim consectetur do enim fugiat. Aliqua sint mollit nisi sint ex elit enim enim ipsum culpa. Reprehenderit eiusmod culpa ipsum quis ipsum quis occaecat. Ipsum enim veniam esse qui occaecat duis non aliquip. Eu qui cillum sit laboris tempor qui reprehenderit mollit non magna magna culpa velit qui. Sit officia qui amet qui cupidatat sit ad.", "maria@example.com", 2));
+            profiles.create(new Profile(null, "Carlos López", "Velit dolore laboris amet id. Minim aliquip est excepteur pariatur ut reprehenderit aliqua amet exercitation sunt adipisicing commodo eiusmod. Aliquip id cillum laborum sit anim qui id laborum aute amet ullamco. Qui reprehenderit velit irure ad aliqua excepteur voluptate ipsum sunt proident voluptate qui.", "carlos@example.com", 3));
+        }
     }
 
     /**
@@ -41,18 +76,31 @@ public class ProfileController {
     @Operation(summary = "Obtener todos los perfiles", description = "Retorna una lista con todos los perfiles registrados en el sistema")
     @ApiResponse(responseCode = "200", description = "Lista de perfiles obtenida exitosamente")
     public ResponseEntity<List<Profile>> getAllProfiles() {
-        return ResponseEntity.ok(profiles);
+        return ResponseEntity.ok(profiles.findAll());
     }
 
     /**
      * GET - Obtener todos los perfiles b
      * Ejemplo: GET http://localhost:8080/api/profiles
+     * Paginado: GET http://localhost:8080/api/profiles/all?limit=20&sort=nombre y después &after=<X-Next-Cursor>
+     * Sin parámetros se responde con la lista ya serializada mientras no cambie ningún perfil
      */
     @GetMapping("/all")
     @Operation(summary = "Obtener todos los perfiles b", description = "Retorna una lista con todos los perfiles registrados en el sistema")
-    @ApiResponse(responseCode = "200", description = "Lista de perfiles obtenida exitosamente")
-    public ResponseEntity<List<Profile>> getAllProfilesB() {
-        return ResponseEntity.ok(profiles);
+    @ApiResponse(responseCode = "200", description = "Lista de perfiles obtenida exitosamente",
+            content = @Content(array = @ArraySchema(schema = @Schema(implementation = Profile.class))))
+    public ResponseEntity<?> getAllProfilesB(
+            @Parameter(description = "Número máximo de perfiles a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor de la página anterior (cabecera X-Next-Cursor)") @RequestParam(required = false) String after,
+            @Parameter(description = "Campo por el que ordenar: id o nombre") @RequestParam(required = false) String sort,
+            @Parameter(description = "Ordenar de mayor a menor") @RequestParam(defaultValue = "false") boolean desc,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        return ETags.of(ETags.collection("profiles", changeLog.version()), () -> {
+            if (limit == null && after == null && sort == null && !desc) {
+                return responseCache.get("profiles:all", profiles.version(), acceptEncoding, profiles::findAll);
+            }
+            return PageResponses.of(() -> profiles.findPage(sort, after, limit, desc));
+        });
     }
 
     /**
@@ -62,18 +110,16 @@ public class ProfileController {
     @GetMapping("/{id}")
     @Operation(summary = "Obtener un perfil por ID", description = "Retorna la información de un perfil específico basándose en su ID")
     @ApiResponses({
-            @ApiResponse(responseCode = "200", description = "Perfil encontrado"),
+            @ApiResponse(responseCode = "200", description = "Perfil encontrado",
+                    content = @Content(schema = @Schema(implementation = Profile.class))),
             @ApiResponse(responseCode = "404", description = "Perfil no encontrado")
     })
-    public ResponseEntity<Profile> getProfileById(
-            @Parameter(description = "ID del perfil a buscar", required = true) @PathVariable Long id) {
+    public ResponseEntity<byte[]> getProfileById(
+            @Parameter(description = "ID del perfil a buscar", required = true) @PathVariable Long id,
+            @Parameter(hidden = true) @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
 
-        Optional<Profile> Profile = profiles.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst();
-
-        return Profile.map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+        return ETags.of(ETags.entity("profiles", id, changeLog.versionOf(id)),
+                () -> responseCache.find("profiles:" + id, profiles.version(), acceptEncoding, () -> profiles.findById(id)));
     }
 
     /**
@@ -81,20 +127,53 @@ public class ProfileController {
      * Ejemplo: GET http://localhost:8080/api/profiles/search?nombre=Juan
      */
     @GetMapping("/search")
-    @Operation(summary = "Buscar perfiles por nombre", description = "Busca perfiles cuyo nombre contenga el texto especificado (case-insensitive)")
+    @Operation(summary = "Buscar perfiles por nombre", description = "Busca perfiles cuyo nombre contenga el texto especificado (sin distinguir mayúsculas ni tildes)")
     @ApiResponse(responseCode = "200", description = "Búsqueda realizada exitosamente")
     public ResponseEntity<List<Profile>> searchProfilesByName(
             @Parameter(description = "Texto a buscar en el nombre del perfil") @RequestParam(required = false) String nombre) {
 
-        if (nombre == null || nombre.trim().isEmpty()) {
-            return ResponseEntity.ok(profiles);
-        }
+        return ETags.of(ETags.collection("profiles", changeLog.version()), () -> {
+            if (nombre == null || nombre.trim().isEmpty()) {
+                return ResponseEntity.ok(profiles.findAll());
+            }
+
+            List<Profile> filteredProfiles = profiles.findAllById(nameIndex.search(nombre));
+
+            return ResponseEntity.ok(filteredProfiles);
+        });
+    }
+
+    /**
+     * GET - Obtener los perfiles de un usuario
+     * Ejemplo: GET http://localhost:8080/api/profiles/byUser/1
+     */
+    @GetMapping("/byUser/{idUsuario}")
+    @Operation(summary = "Obtener los perfiles de un usuario", description = "Retorna, ordenados por ID, los perfiles asociados al usuario indicado (lista vacía si no tiene)")
+    @ApiResponse(responseCode = "200", description = "Perfiles obtenidos exitosamente")
+    public ResponseEntity<List<Profile>> getProfilesByUser(
+            @Parameter(description = "ID del usuario", required = true) @PathVariable Long idUsuario) {
 
-        List<Profile> filteredProfiles = profiles.stream()
-                .filter(u -> u.getNombre().toLowerCase().contains(nombre.toLowerCase()))
-                .toList();
+        return ETags.of(ETags.collection("profiles", changeLog.version()),
+                () -> ResponseEntity.ok(profiles.findAllById(userIndex.find(idUsuario))));
+    }
 
-        return ResponseEntity.ok(filteredProfiles);
+    /**
+     * GET - Obtener los cambios desde una versión
+     * Ejemplo: GET http://localhost:8080/api/profiles/changes?since=0
+     * Después: GET http://localhost:8080/api/profiles/changes?since=<version de la respuesta anterior>
+     */
+    @GetMapping("/changes")
+    @Operation(summary = "Obtener los cambios desde una versión", description = "Retorna los perfiles creados o modificados y los IDs de los perfiles eliminados después de la versión indicada. "
+            + "Si no se conocen todas las bajas desde esa versión, reinicio es true y modificados contiene todos: hay que descartar los datos locales")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Cambios obtenidos exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Versión o límite no válidos")
+    })
+    public ResponseEntity<ChangeSet<Profile, Long>> getProfileChanges(
+            @Parameter(description = "Versión recibida en la última sincronización (0 la primera vez)") @RequestParam(defaultValue = "0") long since,
+            @Parameter(description = "Número máximo de cambios a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit) {
+
+        return ChangeSets.of(since, limit, changeLog::since);
     }
 
     /**
@@ -109,8 +188,7 @@ public class ProfileController {
             @ApiResponse(responseCode = "400", description = "Datos de perfil inválidos")
     })
     public ResponseEntity<Profile> createProfile(@RequestBody Profile Profile) {
-        Profile.setId(nextId++);
-        profiles.add(Profile);
+        profiles.create(Profile);
         return ResponseEntity.status(HttpStatus.CREATED).body(Profile);
     }
 
@@ -130,22 +208,36 @@ public class ProfileController {
             @Parameter(description = "ID del perfil a actualizar", required = true) @PathVariable Long id,
             @RequestBody Profile updatedProfile) {
 
-        Optional<Profile> existingProfile = profiles.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst();
+        return profiles.update(id, profile -> merge(profile, updatedProfile))
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
-        if (existingProfile.isPresent()) {
-            Profile Profile = existingProfile.get();
-            Profile.setNombre(updatedProfile.getNombre());
-            Profile.setDescripcion(updatedProfile.getDescripcion());
-            if (updatedProfile.getEmailDeContacto() != null) {
-                Profile.setEmailDeContacto(updatedProfile.getEmailDeContacto());
-            }
-            Profile.setIdUsuario(updatedProfile.getIdUsuario());
-            return ResponseEntity.ok(Profile);
-        }
+    /**
+     * POST - Crear, actualizar y eliminar varios perfiles en una sola petición
+     * Ejemplo: POST http://localhost:8080/api/profiles/batch
+     * Body: [{ "op": "create", "data": { "nombre": "Perfil 4", "idUsuario": 1 } }, { "op": "update", "id": 2, "data": { ... } }, { "op": "delete", "id": 3 }]
+     * Devuelve un resultado por operación, en el mismo orden, con el código que habría devuelto por separado
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "Operaciones en lote sobre perfiles", description = "Aplica varias altas, actualizaciones y bajas juntas y devuelve el resultado de cada una")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Lote aplicado; cada operación trae su propio código"),
+            @ApiResponse(responseCode = "400", description = "Lote vacío"),
+            @ApiResponse(responseCode = "413", description = "Demasiadas operaciones en un lote")
+    })
+    public ResponseEntity<List<BatchItemResult<Profile>>> batchProfiles(@RequestBody BatchItem<Profile>[] items) {
+        return BatchRequests.apply(profiles, items, ProfileController::merge);
+    }
 
-        return ResponseEntity.notFound().build();
+    // Campos que se pueden cambiar con PUT (y en las actualizaciones en lote)
+    private static void merge(Profile profile, Profile updatedProfile) {
+        profile.setNombre(updatedProfile.getNombre());
+        profile.setDescripcion(updatedProfile.getDescripcion());
+        if (updatedProfile.getEmailDeContacto() != null) {
+            profile.setEmailDeContacto(updatedProfile.getEmailDeContacto());
+        }
+        profile.setIdUsuario(updatedProfile.getIdUsuario());
     }
 
     /**
@@ -161,7 +253,7 @@ public class ProfileController {
     public ResponseEntity<Void> deleteProfile(
             @Parameter(description = "ID del perfil a eliminar", required = true) @PathVariable Long id) {
 
-        boolean removed = profiles.removeIf(u -> u.getId().equals(id));
+        boolean removed = profiles.delete(id);
 
         if (removed) {
             return ResponseEntity.noContent().build();
@@ -2,6 +2,11 @@ package com.example.restapidemo.controller;
 
 import com.example.restapidemo.model.Center;
 import com.example.restapidemo.model.UserCenter;
+import com.example.restapidemo.store.UserCenterIndex;
+import com.example.restapidemo.web.ChangeSet;
+import com.example.restapidemo.web.ChangeSets;
+import com.example.restapidemo.web.ETags;
+import com.example.restapidemo.web.PageResponses;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -13,8 +18,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Controlador REST para gestionar la relación de usuarios y centros
@@ -25,14 +30,18 @@ import java.util.Optional;
 @Tag(name = "Users Centers", description = "API para gestionar la relación de usuarios y centros")
 public class UserCenterController {
 
-    // Simulamos una base de datos en memoria con una lista
-    private final List<UserCenter> usersCenters = new ArrayList<>();
+    // Índice en memoria usuario -> centros y centro -> usuarios
+    private final UserCenterIndex usersCenters;
 
     // Constructor que inicializa algunos perfiles de ejemplo
-    public UserCenterController() {
-        usersCenters.add(new UserCenter(1L, 1L));
-        usersCenters.add(new UserCenter(1L, 3L));
-        usersCenters.add(new UserCenter(2L, 2L));
+    public UserCenterController(UserCenterIndex usersCenters) {
+        this.usersCenters = usersCenters;
+        // Datos de ejemplo solo la primera vez: después se recuperan del disco
+        if (usersCenters.isPristine()) {
+            usersCenters.add(1L, 1L);
+            usersCenters.add(1L, 3L);
+            usersCenters.add(2L, 2L);
+        }
     }
 
     /**
@@ -42,18 +51,22 @@ public class UserCenterController {
     @Operation(summary = "Obtener todos los perfiles", description = "Retorna una lista con todos los perfiles registrados en el sistema")
     @ApiResponse(responseCode = "200", description = "Lista de perfiles obtenida exitosamente")
     public ResponseEntity<List<UserCenter>> getAllCenters() {
-        return ResponseEntity.ok(usersCenters);
+        return ResponseEntity.ok(usersCenters.findAll());
     }
 
     /**
      * GET - Obtener todos los perfiles b
      * Ejemplo: GET http://localhost:8080/api/usersCenters
+     * Paginado: GET http://localhost:8080/api/usersCenters/all?limit=20 y después &after=<X-Next-Cursor>
      */
     @GetMapping("/all")
     @Operation(summary = "Obtener todos los perfiles b", description = "Retorna una lista con todos los perfiles registrados en el sistema")
     @ApiResponse(responseCode = "200", description = "Lista de perfiles obtenida exitosamente")
-    public ResponseEntity<List<UserCenter>> getAllCentersB() {
-        return ResponseEntity.ok(usersCenters);
+    public ResponseEntity<List<UserCenter>> getAllCentersB(
+            @Parameter(description = "Número máximo de asignaciones a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor de la página anterior (cabecera X-Next-Cursor), con formato idUsuario,idCentro") @RequestParam(required = false) String after) {
+        return ETags.of(ETags.collection(UserCenterIndex.NAME, usersCenters.version()),
+                () -> PageResponses.of(() -> usersCenters.findPage(after, limit)));
     }
 
     /**
@@ -70,12 +83,13 @@ public class UserCenterController {
             @Parameter(description = "Id del usuario", required = true) @PathVariable Long idUsuario,
             @Parameter(description = "Id del centro", required = true) @PathVariable Long idCentro) {
 
-        Optional<UserCenter> userCenter = usersCenters.stream()
-                .filter(u -> (u.getIdUsuario() == idUsuario) && (u.getIdCentro() == idCentro))
-                .findFirst();
+        return ETags.of(ETags.collection(UserCenterIndex.NAME, usersCenters.version()), () -> {
+            if (!usersCenters.contains(idUsuario, idCentro)) {
+                return ResponseEntity.notFound().build();
+            }
 
-        return userCenter.map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+            return ResponseEntity.ok(new UserCenter(idUsuario, idCentro));
+        });
     }
 
     /**
@@ -88,15 +102,55 @@ public class UserCenterController {
     public ResponseEntity<List<UserCenter>> searchUserCentersByUserId(
             @Parameter(description = "Id del usuario a buscar") @RequestParam(required = true) Long idUsuario) {
 
-        if (idUsuario == null) {
-            return ResponseEntity.ok(usersCenters);
-        }
+        return ETags.of(ETags.collection(UserCenterIndex.NAME, usersCenters.version()), () -> {
+            if (idUsuario == null) {
+                return ResponseEntity.ok(usersCenters.findAll());
+            }
+
+            List<UserCenter> filteredUsersCenters = Arrays.stream(usersCenters.centersOf(idUsuario))
+                    .mapToObj(idCentro -> new UserCenter(idUsuario, idCentro))
+                    .toList();
+
+            return ResponseEntity.ok(filteredUsersCenters);
+        });
+    }
+
+    /**
+     * GET - Buscar usuarios assignados a un centro
+     * Ejemplo: GET http://localhost:8080/api/usersCenters/searchByCenter?idCentro=1
+     */
+    @GetMapping("/searchByCenter")
+    @Operation(summary = "Buscar usuarios assignados a un centro", description = "Busca todos los usuarios de un centro por id de centro")
+    @ApiResponse(responseCode = "200", description = "Búsqueda realizada exitosamente")
+    public ResponseEntity<List<UserCenter>> searchUserCentersByCenterId(
+            @Parameter(description = "Id del centro a buscar") @RequestParam(required = true) Long idCentro) {
+
+        return ETags.of(ETags.collection(UserCenterIndex.NAME, usersCenters.version()), () -> {
+            List<UserCenter> filteredUsersCenters = Arrays.stream(usersCenters.usersOf(idCentro))
+                    .mapToObj(idUsuario -> new UserCenter(idUsuario, idCentro))
+                    .toList();
+
+            return ResponseEntity.ok(filteredUsersCenters);
+        });
+    }
 
-        List<UserCenter> filteredUsersCenters = usersCenters.stream()
-                .filter(u -> u.getIdUsuario() == idUsuario)
-                .toList();
+    /**
+     * GET - Obtener los cambios desde una versión
+     * Ejemplo: GET http://localhost:8080/api/usersCenters/changes?since=0
+     * Después: GET http://localhost:8080/api/usersCenters/changes?since=<version de la respuesta anterior>
+     */
+    @GetMapping("/changes")
+    @Operation(summary = "Obtener los cambios desde una versión", description = "Retorna las asignaciones añadidas y las eliminadas después de la versión indicada. "
+            + "Si no se conocen todas las bajas desde esa versión, reinicio es true y modificados contiene todas: hay que descartar los datos locales")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Cambios obtenidos exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Versión o límite no válidos")
+    })
+    public ResponseEntity<ChangeSet<UserCenter, UserCenter>> getUserCenterChanges(
+            @Parameter(description = "Versión recibida en la última sincronización (0 la primera vez)") @RequestParam(defaultValue = "0") long since,
+            @Parameter(description = "Número máximo de cambios a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit) {
 
-        return ResponseEntity.ok(filteredUsersCenters);
+        return ChangeSets.of(since, limit, usersCenters::changesSince);
     }
 
     /**
@@ -111,14 +165,19 @@ public class UserCenterController {
             @ApiResponse(responseCode = "400", description = "Datos de usuario centro inválidos")
     })
     public ResponseEntity<UserCenter> createUserCenter(@RequestBody UserCenter userCenter) {
-        usersCenters.add(userCenter);
+        if (userCenter.getIdUsuario() == null || userCenter.getIdCentro() == null) {
+            return ResponseEntity.badRequest().build();
+        }
+        // Si la asignación ya existía no se duplica
+        usersCenters.add(userCenter.getIdUsuario(), userCenter.getIdCentro());
         return ResponseEntity.status(HttpStatus.CREATED).body(userCenter);
     }
 
     /**
-     * POST - Crear un nuevo UsuarioCentro
+     * POST - Crear varios UsuarioCentro
      * Ejemplo: POST http://localhost:8080/api/usersCenters/createAll
-     * Body: { "idUsuario": 1, "idCentro": 2}
+     * Body: [{ "idUsuario": 1, "idCentro": 2}]
+     * Devuelve solo las asignaciones nuevas: las repetidas se ignoran
      */
     @PostMapping("/createAll")
     @Operation(summary = "Crear un nuevo usuario centro", description = "Crea un nuevo usuario centro en el sistema.")
@@ -127,8 +186,17 @@ public class UserCenterController {
             @ApiResponse(responseCode = "400", description = "Datos de usuario centro inválidos")
     })
     public ResponseEntity<ArrayList<UserCenter>> createUsersCenters(@RequestBody ArrayList<UserCenter> listUserCenter) {
-        usersCenters.addAll(listUserCenter);
-        return ResponseEntity.status(HttpStatus.CREATED).body(listUserCenter);
+        if (listUserCenter.stream().anyMatch(u -> u.getIdUsuario() == null || u.getIdCentro() == null)) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ArrayList<UserCenter> created = new ArrayList<>();
+        for (UserCenter userCenter : listUserCenter) {
+            if (usersCenters.add(userCenter.getIdUsuario(), userCenter.getIdCentro())) {
+                created.add(userCenter);
+            }
+        }
+        return ResponseEntity.status(HttpStatus.CREATED).body(created);
     }
 
     /**
@@ -176,7 +244,7 @@ public class UserCenterController {
             @Parameter(description = "ID del centro a eliminar", required = true) @PathVariable Long idUsuario,
             @Parameter(description = "ID del centro a eliminar", required = true) @PathVariable Long idCentro) {
 
-        boolean removed = usersCenters.removeIf(u -> (u.getIdUsuario() == idUsuario) && (u.getIdCentro() == idCentro));
+        boolean removed = usersCenters.remove(idUsuario, idCentro);
 
         if (removed) {
             return ResponseEntity.noContent().build();
@@ -198,7 +266,7 @@ public class UserCenterController {
     public ResponseEntity<Void> deleteAllUserCenters(
             @Parameter(description = "ID del usuario a eliminar centros", required = true) @PathVariable Long idUsuario) {
 
-        boolean removed = usersCenters.removeIf(u -> (u.getIdUsuario() == idUsuario));
+        boolean removed = usersCenters.removeUser(idUsuario) > 0;
 
         if (removed) {
             return ResponseEntity.noContent().build();
@@ -1,18 +1,38 @@
 package com.example.restapidemo.controller;
 
+import com.example.restapidemo.auth.PasswordService;
 import com.example.restapidemo.model.User;
+import com.example.restapidemo.model.UserRank;
+import com.example.restapidemo.store.ChangeLog;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.NGramIndex;
+import com.example.restapidemo.store.RankIndex;
+import com.example.restapidemo.web.BatchItem;
+import com.example.restapidemo.web.BatchItemResult;
+import com.example.restapidemo.web.BatchRequests;
+import com.example.restapidemo.web.ChangeSet;
+import com.example.restapidemo.web.ChangeSets;
+import com.example.restapidemo.web.ETags;
+import com.example.restapidemo.web.NdjsonExport;
+import com.example.restapidemo.web.PageResponses;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * Controlador REST para gestionar usuarios
@@ -23,18 +43,47 @@ import java.util.Optional;
 @Tag(name = "Users", description = "API para gestionar usuarios")
 public class UserController {
 
-    // Simulamos una base de datos en memoria con una lista
-    private final List<User> users = new ArrayList<>();
-    private Long nextId = 1L;
+    // Almacén en memoria indexado por ID (compartido y seguro entre hilos)
+    private final InMemoryStore<User> users;
+
+    // Índice de trigramas sobre el nombre, mantenido por el propio almacén
+    private final NGramIndex<User> nameIndex;
+
+    // Clasificación por puntuación, mantenida por el propio almacén
+    private final RankIndex<User> scoreRank;
+
+    // Versión de modificación de cada entidad, para la sincronización por cambios
+    private final ChangeLog<User> changeLog;
+
+    private final ObjectMapper objectMapper;
+
+    // Las contraseñas recibidas se guardan cifradas; el cifrado va en su propio pool
+    private final PasswordService passwords;
+
+    // Después de cifrar, la escritura (y la espera al fsync) sigue en el pool asíncrono
+    // de Spring y no en uno de los pocos hilos de cifrado
+    private final Executor taskExecutor;
 
     // Constructor que inicializa algunos usuarios de ejemplo
-    public UserController() {
-        users.add(new User(nextId++, "Juan Pérez", "juan@example.com", 30, "01/12/2025", "04/12/2025", "Admin", 3, 10, "Juan."));
-        users.add(new User(nextId++, "María García", "maria@example.com", 25, "02/12/2025", "04/12/2025", "Usuario",3, 7, "María."));
-        users.add(new User(nextId++, "Carlos López", "carlos@example.com", 35, "01/12/2025", "03/12/2025", "Usuario",3, 8, "Carlos."));
-        users.add(new User(nextId++, "Pepito Pérez", "pepito@example.com", 36, "03/12/2025", "04/12/2025", "Admin",3, 10, "Pepito."));
-        users.add(new User(nextId++, "Carla García", "carla@example.com", 25, "01/12/2025", "04/12/2025", "Solo lectura",3, 6, "Carla."));
-        users.add(new User(nextId++, "José López", "jose@example.com", 28, "04/12/2025", "04/12/2025", "Admin",3, 9, "José."));
+    public UserController(InMemoryStore<User> users, NGramIndex<User> nameIndex, RankIndex<User> scoreRank,
+                          ChangeLog<User> changeLog, ObjectMapper objectMapper, PasswordService passwords,
+                          @Qualifier("applicationTaskExecutor") Executor taskExecutor) {
+        this.users = users;
+        this.changeLog = changeLog;
+        this.nameIndex = nameIndex;
+        this.scoreRank = scoreRank;
+        this.objectMapper = objectMapper;
+        this.passwords = passwords;
+        this.taskExecutor = taskExecutor;
+        // Datos de ejemplo solo la primera vez: después se recuperan del disco
+        if (users.isPristine()) {
+            users.create(new User(null, "Juan Pérez", "juan@example.com", 30, "01/12/2025", "04/12/2025", "Admin", 3, 10, "Juan.", null));
+            users.create(new User(null, "María García", "maria@example.com", 25, "02/12/2025", "04/12/2025", "Usuario",3, 7, "María.", null));
+            users.create(new User(null, "Carlos López", "carlos@example.com", 35, "01/12/2025", "03/12/2025", "Usuario",3, 8, "Carlos.", null));
+            users.create(new User(null, "Pepito Pérez", "pepito@example.com", 36, "03/12/2025", "04/12/2025", "Admin",3, 10, "Pepito.", null));
+            users.create(new User(null, "Carla García", "carla@example.com", 25, "01/12/2025", "04/12/2025", "Solo lectura",3, 6, "Carla.", null));
+            users.create(new User(null, "José López", "jose@example.com", 28, "04/12/2025", "04/12/2025", "Admin",3, 9, "José.", null));
+        }
     }
 
     /**
@@ -44,18 +93,80 @@ public class UserController {
     @Operation(summary = "Obtener todos los usuarios", description = "Retorna una lista con todos los usuarios registrados en el sistema")
     @ApiResponse(responseCode = "200", description = "Lista de usuarios obtenida exitosamente")
     public ResponseEntity<List<User>> getAllUsers() {
-        return ResponseEntity.ok(users);
+        return ResponseEntity.ok(users.findAll());
     }
 
     /**
      * GET - Obtener todos los usuarios b
      * Ejemplo: GET http://localhost:8080/api/users
+     * Paginado: GET http://localhost:8080/api/users/all?limit=20&sort=nombre y después &after=<X-Next-Cursor>
      */
     @GetMapping("/all")
     @Operation(summary = "Obtener todos los usuarios b", description = "Retorna una lista con todos los usuarios registrados en el sistema")
     @ApiResponse(responseCode = "200", description = "Lista de usuarios obtenida exitosamente")
-    public ResponseEntity<List<User>> getAllUsersB() {
-        return ResponseEntity.ok(users);
+    public ResponseEntity<List<User>> getAllUsersB(
+            @Parameter(description = "Número máximo de usuarios a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit,
+            @Parameter(description = "Cursor de la página anterior (cabecera X-Next-Cursor)") @RequestParam(required = false) String after,
+            @Parameter(description = "Campo por el que ordenar: id, nombre, edad o puntuacion") @RequestParam(required = false) String sort,
+            @Parameter(description = "Ordenar de mayor a menor") @RequestParam(defaultValue = "false") boolean desc) {
+        return ETags.of(ETags.collection("users", changeLog.version()),
+                () -> PageResponses.of(() -> users.findPage(sort, after, limit, desc)));
+    }
+
+    /**
+     * GET - Exportar todos los usuarios en NDJSON (un usuario por línea)
+     * Ejemplo: GET http://localhost:8080/api/users/export
+     */
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    @Operation(summary = "Exportar todos los usuarios", description = "Escribe los usuarios uno a uno en formato NDJSON sin cargar toda la respuesta en memoria")
+    @ApiResponse(responseCode = "200", description = "Exportación iniciada")
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        return NdjsonExport.of(objectMapper, User.class, "users.ndjson", users.iterateInOrder());
+    }
+
+    /**
+     * GET - Clasificación de usuarios por puntuación
+     * Ejemplo: GET http://localhost:8080/api/users/leaderboard?limit=10
+     * Siguiente página: GET http://localhost:8080/api/users/leaderboard?limit=10&offset=10
+     */
+    @GetMapping("/leaderboard")
+    @Operation(summary = "Clasificación por puntuación", description = "Retorna los usuarios de mayor a menor puntuación (a igual puntuación, por ID) a partir de la posición indicada")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Clasificación obtenida exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Límite o posición no válidos")
+    })
+    public ResponseEntity<List<User>> getLeaderboard(
+            @Parameter(description = "Número de usuarios a devolver") @RequestParam(defaultValue = "10") int limit,
+            @Parameter(description = "Usuarios a saltar desde el primero") @RequestParam(defaultValue = "0") int offset) {
+
+        if (limit < 1 || offset < 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ETags.of(ETags.collection("users", changeLog.version()),
+                () -> ResponseEntity.ok(users.findAllById(scoreRank.top(offset, limit))));
+    }
+
+    /**
+     * GET - Posición de un usuario en la clasificación por puntuación
+     * Ejemplo: GET http://localhost:8080/api/users/1/rank
+     */
+    @GetMapping("/{id}/rank")
+    @Operation(summary = "Posición de un usuario en la clasificación", description = "Retorna la posición del usuario en la clasificación por puntuación y el total de usuarios")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Posición obtenida exitosamente"),
+            @ApiResponse(responseCode = "404", description = "Usuario no encontrado")
+    })
+    public ResponseEntity<UserRank> getUserRank(
+            @Parameter(description = "ID del usuario", required = true) @PathVariable Long id) {
+
+        // La posición cambia con la puntuación de cualquier usuario: el ETag es el de todo el almacén
+        return ETags.of(ETags.collection("users", changeLog.version()), () -> {
+            RankIndex.Rank rank = scoreRank.rankOf(id);
+            if (rank == null) {
+                return ResponseEntity.notFound().build();
+            }
+            return ResponseEntity.ok(new UserRank(id, rank.score(), rank.position(), rank.total()));
+        });
     }
 
     /**
@@ -71,12 +182,9 @@ public class UserController {
     public ResponseEntity<User> getUserById(
             @Parameter(description = "ID del usuario a buscar", required = true) @PathVariable Long id) {
 
-        Optional<User> user = users.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst();
-
-        return user.map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+        return ETags.of(ETags.entity("users", id, changeLog.versionOf(id)), () -> users.findById(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build()));
     }
 
     /**
@@ -84,20 +192,39 @@ public class UserController {
      * Ejemplo: GET http://localhost:8080/api/users/search?nombre=Juan
      */
     @GetMapping("/search")
-    @Operation(summary = "Buscar usuarios por nombre", description = "Busca usuarios cuyo nombre contenga el texto especificado (case-insensitive)")
+    @Operation(summary = "Buscar usuarios por nombre", description = "Busca usuarios cuyo nombre contenga el texto especificado (sin distinguir mayúsculas ni tildes)")
     @ApiResponse(responseCode = "200", description = "Búsqueda realizada exitosamente")
     public ResponseEntity<List<User>> searchUsersByName(
             @Parameter(description = "Texto a buscar en el nombre del usuario") @RequestParam(required = false) String nombre) {
 
-        if (nombre == null || nombre.trim().isEmpty()) {
-            return ResponseEntity.ok(users);
-        }
+        return ETags.of(ETags.collection("users", changeLog.version()), () -> {
+            if (nombre == null || nombre.trim().isEmpty()) {
+                return ResponseEntity.ok(users.findAll());
+            }
 
-        List<User> filteredUsers = users.stream()
-                .filter(u -> u.getNombre().toLowerCase().contains(nombre.toLowerCase()))
-                .toList();
+            List<User> filteredUsers = users.findAllById(nameIndex.search(nombre));
+
+            return ResponseEntity.ok(filteredUsers);
+        });
+    }
+
+    /**
+     * GET - Obtener los cambios desde una versión
+     * Ejemplo: GET http://localhost:8080/api/users/changes?since=0
+     * Después: GET http://localhost:8080/api/users/changes?since=<version de la respuesta anterior>
+     */
+    @GetMapping("/changes")
+    @Operation(summary = "Obtener los cambios desde una versión", description = "Retorna los usuarios creados o modificados y los IDs de los usuarios eliminados después de la versión indicada. "
+            + "Si no se conocen todas las bajas desde esa versión, reinicio es true y modificados contiene todos: hay que descartar los datos locales")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Cambios obtenidos exitosamente"),
+            @ApiResponse(responseCode = "400", description = "Versión o límite no válidos")
+    })
+    public ResponseEntity<ChangeSet<User, Long>> getUserChanges(
+            @Parameter(description = "Versión recibida en la última sincronización (0 la primera vez)") @RequestParam(defaultValue = "0") long since,
+            @Parameter(description = "Número máximo de cambios a devolver (sin límite si se omite)") @RequestParam(required = false) Integer limit) {
 
-        return ResponseEntity.ok(filteredUsers);
+        return ChangeSets.of(since, limit, changeLog::since);
     }
 
     /**
@@ -109,12 +236,15 @@ public class UserController {
     @Operation(summary = "Crear un nuevo usuario", description = "Crea un nuevo usuario en el sistema. El ID se asigna automáticamente.")
     @ApiResponses({
             @ApiResponse(responseCode = "201", description = "Usuario creado exitosamente"),
-            @ApiResponse(responseCode = "400", description = "Datos de usuario inválidos")
+            @ApiResponse(responseCode = "400", description = "Datos de usuario inválidos"),
+            @ApiResponse(responseCode = "503", description = "Demasiadas contraseñas que cifrar a la vez, hay que reintentar")
     })
-    public ResponseEntity<User> createUser(@RequestBody User user) {
-        user.setId(nextId++);
-        users.add(user);
-        return ResponseEntity.status(HttpStatus.CREATED).body(user);
+    public CompletableFuture<ResponseEntity<User>> createUser(@RequestBody User user) {
+        return hashPassword(user.getPassword()).thenApplyAsync(hash -> {
+            user.setPassword(hash);
+            users.create(user);
+            return ResponseEntity.status(HttpStatus.CREATED).body(user);
+        }, taskExecutor).exceptionally(UserController::unavailable);
     }
 
     /**
@@ -127,33 +257,107 @@ public class UserController {
     @Operation(summary = "Actualizar un usuario", description = "Actualiza la información completa de un usuario existente")
     @ApiResponses({
             @ApiResponse(responseCode = "200", description = "Usuario actualizado exitosamente"),
-            @ApiResponse(responseCode = "404", description = "Usuario no encontrado")
+            @ApiResponse(responseCode = "404", description = "Usuario no encontrado"),
+            @ApiResponse(responseCode = "503", description = "Demasiadas contraseñas que cifrar a la vez, hay que reintentar")
     })
-    public ResponseEntity<User> updateUser(
+    public CompletableFuture<ResponseEntity<User>> updateUser(
             @Parameter(description = "ID del usuario a actualizar", required = true) @PathVariable Long id,
             @RequestBody User updatedUser) {
 
-        Optional<User> existingUser = users.stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst();
+        return hashPassword(updatedUser.getPassword()).thenApplyAsync(hash -> {
+            updatedUser.setPassword(hash);
+            return users.update(id, user -> merge(user, updatedUser))
+                    .map(ResponseEntity::ok)
+                    .orElse(ResponseEntity.notFound().build());
+        }, taskExecutor).exceptionally(UserController::unavailable);
+    }
 
-        if (existingUser.isPresent()) {
-            User user = existingUser.get();
-            user.setNombre(updatedUser.getNombre());
-            if (updatedUser.getEmail() != null) {
-                user.setEmail(updatedUser.getEmail());
+    /**
+     * POST - Crear, actualizar y eliminar varios usuarios en una sola petición
+     * Ejemplo: POST http://localhost:8080/api/users/batch
+     * Body: [{ "op": "create", "data": { "nombre": "Ana Torres", "email": "ana@example.com" } }, { "op": "update", "id": 2, "data": { ... } }, { "op": "delete", "id": 3 }]
+     * Devuelve un resultado por operación, en el mismo orden, con el código que habría devuelto por separado
+     * Las operaciones cuya contraseña no se ha podido cifrar por falta de sitio en el pool traen 503
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "Operaciones en lote sobre usuarios", description = "Aplica varias altas, actualizaciones y bajas juntas y devuelve el resultado de cada una")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Lote aplicado; cada operación trae su propio código"),
+            @ApiResponse(responseCode = "400", description = "Lote vacío"),
+            @ApiResponse(responseCode = "413", description = "Demasiadas operaciones en un lote")
+    })
+    public CompletableFuture<ResponseEntity<List<BatchItemResult<User>>>> batchUsers(@RequestBody BatchItem<User>[] items) {
+        if (items == null || items.length > BatchRequests.MAX_ITEMS) {
+            return CompletableFuture.completedFuture(BatchRequests.apply(users, items, UserController::merge));
+        }
+        // Primero se cifran las contraseñas que traiga el lote, fuera del cerrojo del almacén
+        // y unas pocas a la vez para no dejar sin sitio a los logins
+        List<User> withPassword = new ArrayList<>();
+        List<String> rawPasswords = new ArrayList<>();
+        int[] positions = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            User data = items[i] == null ? null : items[i].getData();
+            if (data == null) {
+                continue;
             }
-            user.setEdad(updatedUser.getEdad());
-            user.setCreacion(updatedUser.getCreacion());
-            user.setUltimoLogin(updatedUser.getUltimoLogin());
-            user.setRol(updatedUser.getRol());
-            user.setNivelDePermiso(updatedUser.getNivelDePermiso());
-            user.setPuntuacion(updatedUser.getPuntuacion());
-            user.setDescripcion(updatedUser.getDescripcion());
-            return ResponseEntity.ok(user);
+            if (data.getPassword() == null || data.getPassword().isEmpty()) {
+                data.setPassword(null);
+                continue;
+            }
+            positions[withPassword.size()] = i;
+            withPassword.add(data);
+            rawPasswords.add(data.getPassword());
         }
+        List<CompletableFuture<String>> hashes = passwords.hashAll(rawPasswords);
+        return CompletableFuture.allOf(hashes.toArray(CompletableFuture[]::new)).handleAsync((done, ignored) -> {
+            BitSet busy = new BitSet(items.length);
+            for (int j = 0; j < hashes.size(); j++) {
+                try {
+                    withPassword.get(j).setPassword(hashes.get(j).join());
+                } catch (CompletionException error) {
+                    if (!PasswordService.isBusy(error)) {
+                        throw error;
+                    }
+                    busy.set(positions[j]);
+                }
+            }
+            return BatchRequests.apply(users, items, UserController::merge, busy);
+        }, taskExecutor);
+    }
 
-        return ResponseEntity.notFound().build();
+    // Campos que se pueden cambiar con PUT (y en las actualizaciones en lote).
+    // Sin contraseña en el cuerpo se mantiene la que tuviera
+    private static void merge(User user, User updatedUser) {
+        user.setNombre(updatedUser.getNombre());
+        if (updatedUser.getEmail() != null) {
+            user.setEmail(updatedUser.getEmail());
+        }
+        user.setEdad(updatedUser.getEdad());
+        user.setCreacion(updatedUser.getCreacion());
+        user.setUltimoLogin(updatedUser.getUltimoLogin());
+        user.setRol(updatedUser.getRol());
+        user.setNivelDePermiso(updatedUser.getNivelDePermiso());
+        user.setPuntuacion(updatedUser.getPuntuacion());
+        user.setDescripcion(updatedUser.getDescripcion());
+        if (updatedUser.getPassword() != null) {
+            user.setPassword(updatedUser.getPassword());
+        }
+    }
+
+    // Sin contraseña no hay nada que cifrar y se sigue en el mismo hilo
+    private CompletableFuture<String> hashPassword(String password) {
+        if (password == null || password.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return passwords.hash(password);
+    }
+
+    // Solo el pool de cifrado lleno es un 503; cualquier otro error sigue su curso y acaba en 500
+    private static <T> ResponseEntity<T> unavailable(Throwable error) {
+        if (!PasswordService.isBusy(error)) {
+            throw error instanceof CompletionException completion ? completion : new CompletionException(error);
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
     }
 
     /**
@@ -169,7 +373,7 @@ public class UserController {
     public ResponseEntity<Void> deleteUser(
             @Parameter(description = "ID del usuario a eliminar", required = true) @PathVariable Long id) {
 
-        boolean removed = users.removeIf(u -> u.getId().equals(id));
+        boolean removed = users.delete(id);
 
         if (removed) {
             return ResponseEntity.noContent().build();
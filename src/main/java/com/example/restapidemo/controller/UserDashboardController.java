@@ -0,0 +1,79 @@
+package com.example.restapidemo.controller;
+
+import com.example.restapidemo.model.Center;
+import com.example.restapidemo.model.Profile;
+import com.example.restapidemo.model.User;
+import com.example.restapidemo.store.ChangeLog;
+import com.example.restapidemo.store.HashIndex;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.UserCenterIndex;
+import com.example.restapidemo.web.ETags;
+import com.example.restapidemo.web.UserDashboard;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+/**
+ * Controlador REST para la pantalla de un usuario
+ * Junta en una petición el usuario, sus perfiles y sus centros, que de otro
+ * modo necesitan una petición por cada uno. Todo sale de los índices en
+ * memoria: cada parte cuesta lo que tenga el usuario, no el total
+ */
+@RestController
+@RequestMapping("/api/users")
+@Tag(name = "Users", description = "API para gestionar usuarios")
+public class UserDashboardController {
+
+    private final InMemoryStore<User> users;
+    private final InMemoryStore<Profile> profiles;
+    private final InMemoryStore<Center> centers;
+
+    // Índice idUsuario -> perfiles y asignaciones usuario -> centros
+    private final HashIndex<Profile, Long> profileUserIndex;
+    private final UserCenterIndex usersCenters;
+
+    // Versiones de cada almacén, para el ETag de la respuesta
+    private final ChangeLog<User> userChangeLog;
+    private final ChangeLog<Profile> profileChangeLog;
+    private final ChangeLog<Center> centerChangeLog;
+
+    public UserDashboardController(InMemoryStore<User> users, InMemoryStore<Profile> profiles, InMemoryStore<Center> centers,
+                                   HashIndex<Profile, Long> profileUserIndex, UserCenterIndex usersCenters,
+                                   ChangeLog<User> userChangeLog, ChangeLog<Profile> profileChangeLog,
+                                   ChangeLog<Center> centerChangeLog) {
+        this.users = users;
+        this.profiles = profiles;
+        this.centers = centers;
+        this.profileUserIndex = profileUserIndex;
+        this.usersCenters = usersCenters;
+        this.userChangeLog = userChangeLog;
+        this.profileChangeLog = profileChangeLog;
+        this.centerChangeLog = centerChangeLog;
+    }
+
+    /**
+     * GET - Obtener un usuario con sus perfiles y sus centros
+     * Ejemplo: GET http://localhost:8080/api/users/1/dashboard
+     */
+    @GetMapping("/{id}/dashboard")
+    @Operation(summary = "Obtener un usuario con sus perfiles y centros", description = "Retorna en una sola respuesta el usuario, sus perfiles y los centros que tiene asignados, completos")
+    @ApiResponses({
+            @ApiResponse(responseCode = "200", description = "Usuario encontrado"),
+            @ApiResponse(responseCode = "404", description = "Usuario no encontrado")
+    })
+    public ResponseEntity<UserDashboard> getUserDashboard(
+            @Parameter(description = "ID del usuario", required = true) @PathVariable Long id) {
+
+        String etag = ETags.composite("dashboard", id, userChangeLog.versionOf(id), profileChangeLog.version(),
+                usersCenters.version(), centerChangeLog.version());
+        return ETags.of(etag, () -> users.findById(id)
+                .map(user -> ResponseEntity.ok(new UserDashboard(user,
+                        profiles.findAllById(profileUserIndex.find(id)),
+                        centers.findAllById(usersCenters.centersOf(id)))))
+                .orElse(ResponseEntity.notFound().build()));
+    }
+}
@@ -11,7 +11,7 @@ import lombok.NoArgsConstructor;
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-public class Center {
+public class Center implements Identifiable {
 
     private Long id;
     private String nombre;
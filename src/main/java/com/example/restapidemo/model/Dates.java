@@ -0,0 +1,49 @@
+package com.example.restapidemo.model;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.format.ResolverStyle;
+
+/**
+ * Conversión de las fechas que llegan como texto a días desde el 1/1/1970
+ * Acepta el formato de los datos ("1/1/2000", día/mes/año) y el ISO ("2000-01-01")
+ */
+public final class Dates {
+
+    /**
+     * Valor para fechas vacías o que no se entienden
+     */
+    public static final int UNKNOWN = Integer.MIN_VALUE;
+
+    private static final DateTimeFormatter DAY_MONTH_YEAR = DateTimeFormatter.ofPattern("d/M/uuuu")
+            .withResolverStyle(ResolverStyle.STRICT);
+
+    private Dates() {
+    }
+
+    /**
+     * Días desde el 1/1/1970, o {@link #UNKNOWN}
+     */
+    public static int toEpochDay(String text) {
+        LocalDate date = parse(text);
+        return date == null ? UNKNOWN : (int) date.toEpochDay();
+    }
+
+    /**
+     * La fecha, o null si está vacía o no se entiende
+     */
+    public static LocalDate parse(String text) {
+        if (text == null || text.isBlank()) {
+            return null;
+        }
+        String trimmed = text.strip();
+        try {
+            return trimmed.indexOf('/') >= 0
+                    ? LocalDate.parse(trimmed, DAY_MONTH_YEAR)
+                    : LocalDate.parse(trimmed);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
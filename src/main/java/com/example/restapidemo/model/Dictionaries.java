@@ -0,0 +1,24 @@
+package com.example.restapidemo.model;
+
+import java.util.List;
+
+/**
+ * Diccionarios compartidos por todas las entidades de cada tipo
+ * Los códigos solo tienen sentido dentro de la JVM: en disco y en la API
+ * los campos siguen siendo textos
+ */
+public final class Dictionaries {
+
+    public static final StringDictionary ROLES = new StringDictionary("rol");
+    public static final StringDictionary SEXOS = new StringDictionary("sexo");
+    public static final StringDictionary FECHAS_DE_NACIMIENTO = new StringDictionary("fechaDeNacimiento");
+    public static final StringDictionary COLORES_FICHA_MEDICA = new StringDictionary("colorFichaMedica");
+    public static final StringDictionary DIAGNOSTICOS = new StringDictionary("diagnosticos");
+
+    private Dictionaries() {
+    }
+
+    public static List<StringDictionary> all() {
+        return List.of(ROLES, SEXOS, FECHAS_DE_NACIMIENTO, COLORES_FICHA_MEDICA, DIAGNOSTICOS);
+    }
+}
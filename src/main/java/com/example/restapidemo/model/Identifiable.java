@@ -0,0 +1,12 @@
+package com.example.restapidemo.model;
+
+/**
+ * Interfaz común para los modelos que tienen un ID numérico
+ * Permite que los almacenes en memoria indexen cualquier entidad por su ID
+ */
+public interface Identifiable {
+
+    Long getId();
+
+    void setId(Long id);
+}
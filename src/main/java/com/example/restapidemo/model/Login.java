@@ -1,15 +1,17 @@
 package com.example.restapidemo.model;
 
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Datos enviados para iniciar sesión
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
 public class Login {
 
     private String email;
     private String pass;
-
-    public String getEmail() {
-        return email;
-    }
-
-    public String getPass(String username) {
-        return pass;
-    }
 }
@@ -1,28 +1,103 @@
 package com.example.restapidemo.model;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 
+/**
+ * Los campos con pocos valores distintos (sexo, fecha de nacimiento, color de
+ * la ficha y diagnósticos) se guardan como códigos de {@link Dictionaries};
+ * los getters y setters siguen trabajando con textos
+ *
+ * La fecha de nacimiento se convierte además a días desde 1970 al guardarla,
+ * para poder buscar por fecha o por edad sin volver a leer el texto
+ */
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
-public class Patient {
+// Los códigos de un mismo valor son iguales, así que se comparan directamente
+@EqualsAndHashCode(doNotUseGetters = true)
+public class Patient implements Identifiable {
 
     private Long id;
     private String nombre;
     private String apellido1;
     private String apellido2;
-    private String fechaDeNacimiento;
-    private String sexo;
+    private int fechaDeNacimiento = StringDictionary.NULL;
+    // Se calcula en setFechaDeNacimiento; no forma parte de la API ni se guarda en disco
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @Setter(AccessLevel.NONE)
+    private int diaDeNacimiento = Dates.UNKNOWN;
+    private int sexo = StringDictionary.NULL;
     private String dni;
 
     private int numeroTelefono;
     private String email;
 
-    private String colorFichaMedica;
+    private int colorFichaMedica = StringDictionary.NULL;
 
-    private String[] diagnosticos;
+    private int[] diagnosticos;
 
     private String[] comentariosDePaciente;
+
+    public Patient(Long id, String nombre, String apellido1, String apellido2, String fechaDeNacimiento,
+                   String sexo, String dni, int numeroTelefono, String email, String colorFichaMedica,
+                   String[] diagnosticos, String[] comentariosDePaciente) {
+        this.id = id;
+        this.nombre = nombre;
+        this.apellido1 = apellido1;
+        this.apellido2 = apellido2;
+        setFechaDeNacimiento(fechaDeNacimiento);
+        setSexo(sexo);
+        this.dni = dni;
+        this.numeroTelefono = numeroTelefono;
+        this.email = email;
+        setColorFichaMedica(colorFichaMedica);
+        setDiagnosticos(diagnosticos);
+        this.comentariosDePaciente = comentariosDePaciente;
+    }
+
+    public String getFechaDeNacimiento() {
+        return Dictionaries.FECHAS_DE_NACIMIENTO.decode(fechaDeNacimiento);
+    }
+
+    public void setFechaDeNacimiento(String fechaDeNacimiento) {
+        this.fechaDeNacimiento = Dictionaries.FECHAS_DE_NACIMIENTO.encode(fechaDeNacimiento);
+        this.diaDeNacimiento = Dates.toEpochDay(fechaDeNacimiento);
+    }
+
+    /**
+     * Fecha de nacimiento en días desde el 1/1/1970, o null si no hay o no se entiende
+     */
+    @JsonIgnore
+    public Integer getDiaDeNacimiento() {
+        return diaDeNacimiento == Dates.UNKNOWN ? null : diaDeNacimiento;
+    }
+
+    public String getSexo() {
+        return Dictionaries.SEXOS.decode(sexo);
+    }
+
+    public void setSexo(String sexo) {
+        this.sexo = Dictionaries.SEXOS.encode(sexo);
+    }
+
+    public String getColorFichaMedica() {
+        return Dictionaries.COLORES_FICHA_MEDICA.decode(colorFichaMedica);
+    }
+
+    public void setColorFichaMedica(String colorFichaMedica) {
+        this.colorFichaMedica = Dictionaries.COLORES_FICHA_MEDICA.encode(colorFichaMedica);
+    }
+
+    public String[] getDiagnosticos() {
+        return Dictionaries.DIAGNOSTICOS.decodeAll(diagnosticos);
+    }
+
+    public void setDiagnosticos(String[] diagnosticos) {
+        this.diagnosticos = Dictionaries.DIAGNOSTICOS.encodeAll(diagnosticos);
+    }
 }
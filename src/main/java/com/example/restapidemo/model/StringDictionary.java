@@ -0,0 +1,98 @@
+package com.example.restapidemo.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Diccionario de textos repetidos: cada valor distinto se guarda una sola vez
+ * y las entidades guardan su código (un int) en lugar del texto
+ * Decodificar un código es leer una posición de un array
+ *
+ * Los códigos no se reutilizan nunca, así que los valores no se borran aunque
+ * ninguna entidad los use ya: solo conviene para campos con pocos valores
+ * distintos (sexo, rol, diagnósticos...)
+ */
+public final class StringDictionary {
+
+    /**
+     * Código de null
+     */
+    public static final int NULL = -1;
+
+    private final String name;
+    private final ConcurrentHashMap<String, Integer> codes = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    // Se escribe la posición antes de publicar el código en el mapa, así que
+    // quien tenga un código siempre encuentra su valor
+    private volatile String[] values = new String[16];
+    private int size;
+
+    public StringDictionary(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int encode(String value) {
+        if (value == null) {
+            return NULL;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        lock.lock();
+        try {
+            code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            String[] current = values;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = value;
+            values = current;
+            codes.put(value, size);
+            return size++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String decode(int code) {
+        return code == NULL ? null : values[code];
+    }
+
+    public int[] encodeAll(String[] values) {
+        if (values == null) {
+            return null;
+        }
+        int[] encoded = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            encoded[i] = encode(values[i]);
+        }
+        return encoded;
+    }
+
+    public String[] decodeAll(int[] codes) {
+        if (codes == null) {
+            return null;
+        }
+        String[] decoded = new String[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            decoded[i] = decode(codes[i]);
+        }
+        return decoded;
+    }
+
+    /**
+     * Valores distintos guardados
+     */
+    public int size() {
+        return codes.size();
+    }
+}
@@ -1,17 +1,19 @@
 package com.example.restapidemo.model;
 
-import lombok.AllArgsConstructor;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
 
 /**
  * Modelo de datos para un Usuario
  * Representa la información básica de un usuario
+ * El rol se guarda como código de {@link Dictionaries#ROLES}
  */
 @Data
-@AllArgsConstructor
 @NoArgsConstructor
-public class User {
+@EqualsAndHashCode(doNotUseGetters = true)
+public class User implements Identifiable {
 
     private Long id;
     private String nombre;
@@ -20,9 +22,35 @@ public class User {
 
     private String creacion;
     private String ultimoLogin;
-    private String rol;
+    private int rol = StringDictionary.NULL;
     private int nivelDePermiso;
     private int puntuacion;
     private String descripcion;
 
+    // Hash BCrypt de la contraseña: se puede enviar al crear o actualizar, pero nunca se devuelve
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
+    private String password;
+
+    public User(Long id, String nombre, String email, int edad, String creacion, String ultimoLogin, String rol,
+                int nivelDePermiso, int puntuacion, String descripcion, String password) {
+        this.id = id;
+        this.nombre = nombre;
+        this.email = email;
+        this.edad = edad;
+        this.creacion = creacion;
+        this.ultimoLogin = ultimoLogin;
+        setRol(rol);
+        this.nivelDePermiso = nivelDePermiso;
+        this.puntuacion = puntuacion;
+        this.descripcion = descripcion;
+        this.password = password;
+    }
+
+    public String getRol() {
+        return Dictionaries.ROLES.decode(rol);
+    }
+
+    public void setRol(String rol) {
+        this.rol = Dictionaries.ROLES.encode(rol);
+    }
 }
@@ -0,0 +1,20 @@
+package com.example.restapidemo.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Posición de un usuario en la clasificación por puntuación
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserRank {
+
+    private Long idUsuario;
+    private int puntuacion;
+    // Empieza en 1; a igual puntuación va antes el ID más bajo
+    private long posicion;
+    private int total;
+}
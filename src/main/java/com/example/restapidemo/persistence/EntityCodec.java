@@ -0,0 +1,278 @@
+package com.example.restapidemo.persistence;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Codificación binaria de las entidades de un almacén dentro de la copia
+ * Cada propiedad se escribe según su tipo (números en binario, textos con su
+ * longitud delante) y sin nombre: los nombres y tipos se escriben una sola vez
+ * por almacén en el esquema, y al leer se emparejan por nombre con las
+ * propiedades actuales de la clase. Una propiedad que ya no existe se salta y
+ * una nueva se queda con su valor por defecto
+ *
+ * Las propiedades son las mismas que usa Jackson con el mapper de la
+ * persistencia, y se leen y escriben con sus getters y setters, igual que en
+ * el JSON del log. Los tipos sin codificación propia se guardan como JSON
+ *
+ * Formato (enteros en big endian):
+ * <pre>
+ * esquema    nº de propiedades (int) y por propiedad: nombre (short + UTF-8) y tipo (byte)
+ * entidad    las propiedades en el orden del esquema:
+ *            INT 1 byte (0 si es null) + int | LONG 1 byte + long | BOOLEAN 1 byte (0, 1 o 2 si es null)
+ *            STRING longitud (int, -1 si es null) + UTF-8 | STRINGS nº (int, -1 si es null) + STRING cada uno
+ *            JSON longitud (int, -1 si es null) + JSON en UTF-8
+ * </pre>
+ */
+final class EntityCodec<T> {
+
+    static final byte INT = 1;
+    static final byte LONG = 2;
+    static final byte BOOLEAN = 3;
+    static final byte STRING = 4;
+    static final byte STRINGS = 5;
+    static final byte JSON = 6;
+
+    private final ObjectMapper mapper;
+    private final Class<T> type;
+    private final List<Property> properties;
+
+    private EntityCodec(ObjectMapper mapper, Class<T> type, List<Property> properties) {
+        this.mapper = mapper;
+        this.type = type;
+        this.properties = properties;
+    }
+
+    /**
+     * Codificación con las propiedades actuales de la clase
+     */
+    static <T> EntityCodec<T> of(ObjectMapper mapper, Class<T> type) {
+        List<Property> properties = new ArrayList<>();
+        JavaType javaType = mapper.constructType(type);
+        for (BeanPropertyDefinition definition : mapper.getSerializationConfig().introspect(javaType).findProperties()) {
+            AnnotatedMember getter = definition.getAccessor();
+            AnnotatedMember setter = definition.getMutator();
+            if (getter == null || setter == null) {
+                continue;
+            }
+            getter.fixAccess(true);
+            setter.fixAccess(true);
+            JavaType valueType = getter.getType();
+            properties.add(new Property(definition.getName(), kindOf(valueType.getRawClass()), getter, setter, valueType));
+        }
+        return new EntityCodec<>(mapper, type, List.copyOf(properties));
+    }
+
+    private static byte kindOf(Class<?> raw) {
+        if (raw == int.class || raw == Integer.class) {
+            return INT;
+        }
+        if (raw == long.class || raw == Long.class) {
+            return LONG;
+        }
+        if (raw == boolean.class || raw == Boolean.class) {
+            return BOOLEAN;
+        }
+        if (raw == String.class) {
+            return STRING;
+        }
+        if (raw == String[].class) {
+            return STRINGS;
+        }
+        return JSON;
+    }
+
+    Class<T> type() {
+        return type;
+    }
+
+    ObjectMapper mapper() {
+        return mapper;
+    }
+
+    void writeSchema(DataOutputStream out) throws IOException {
+        out.writeInt(properties.size());
+        for (Property property : properties) {
+            byte[] name = property.name().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeByte(property.kind());
+        }
+    }
+
+    void write(DataOutputStream out, T entity) throws IOException {
+        for (Property property : properties) {
+            Object value = property.getter().getValue(entity);
+            switch (property.kind()) {
+                case INT -> {
+                    out.writeByte(value == null ? 0 : 1);
+                    out.writeInt(value == null ? 0 : (Integer) value);
+                }
+                case LONG -> {
+                    out.writeByte(value == null ? 0 : 1);
+                    out.writeLong(value == null ? 0 : (Long) value);
+                }
+                case BOOLEAN -> out.writeByte(value == null ? 2 : (Boolean) value ? 1 : 0);
+                case STRING -> writeString(out, (String) value);
+                case STRINGS -> {
+                    String[] values = (String[]) value;
+                    out.writeInt(values == null ? -1 : values.length);
+                    if (values != null) {
+                        for (String item : values) {
+                            writeString(out, item);
+                        }
+                    }
+                }
+                default -> writeBytes(out, value == null ? null : mapper.writeValueAsBytes(value));
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes == null ? -1 : bytes.length);
+        if (bytes != null) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Lector de las entidades escritas con el esquema que empieza en esa posición
+     */
+    Reader reader(MappedFile buffer, long position) {
+        Map<String, Property> byName = new HashMap<>();
+        properties.forEach(property -> byName.put(property.name(), property));
+        int count = buffer.getInt(position);
+        position += 4;
+        Property[] stored = new Property[count];
+        byte[] kinds = new byte[count];
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.getShort(position)];
+            buffer.get(position + 2, name);
+            position += 2 + name.length;
+            kinds[i] = buffer.get(position++);
+            Property current = byName.get(new String(name, StandardCharsets.UTF_8));
+            // Si ha cambiado de tipo se trata como una propiedad que ya no existe
+            stored[i] = current != null && current.kind() == kinds[i] ? current : null;
+        }
+        return new Reader(buffer, stored, kinds);
+    }
+
+    private record Property(String name, byte kind, AnnotatedMember getter, AnnotatedMember setter, JavaType valueType) {
+    }
+
+    /**
+     * Lee entidades de la copia. Las lecturas absolutas no tocan la posición
+     * del buffer, así que varios hilos pueden usar el mismo lector
+     */
+    final class Reader {
+
+        private final MappedFile buffer;
+        private final Property[] properties;
+        private final byte[] kinds;
+
+        private Reader(MappedFile buffer, Property[] properties, byte[] kinds) {
+            this.buffer = buffer;
+            this.properties = properties;
+            this.kinds = kinds;
+        }
+
+        T read(long position) {
+            T entity = newInstance();
+            long[] cursor = {position};
+            for (int i = 0; i < kinds.length; i++) {
+                Object value = readValue(kinds[i], cursor, properties[i]);
+                if (properties[i] != null && (value != null || !properties[i].valueType().isPrimitive())) {
+                    properties[i].setter().setValue(entity, value);
+                }
+            }
+            return entity;
+        }
+
+        // Lee el valor y avanza el cursor; sin propiedad solo lo salta
+        private Object readValue(byte kind, long[] cursor, Property property) {
+            long position = cursor[0];
+            switch (kind) {
+                case INT -> {
+                    cursor[0] += 5;
+                    return buffer.get(position) == 0 ? null : buffer.getInt(position + 1);
+                }
+                case LONG -> {
+                    cursor[0] += 9;
+                    return buffer.get(position) == 0 ? null : buffer.getLong(position + 1);
+                }
+                case BOOLEAN -> {
+                    cursor[0] += 1;
+                    byte value = buffer.get(position);
+                    return value == 2 ? null : value == 1;
+                }
+                case STRING -> {
+                    return readString(cursor);
+                }
+                case STRINGS -> {
+                    int count = buffer.getInt(position);
+                    cursor[0] += 4;
+                    if (count < 0) {
+                        return null;
+                    }
+                    String[] values = new String[count];
+                    for (int i = 0; i < count; i++) {
+                        values[i] = readString(cursor);
+                    }
+                    return values;
+                }
+                case JSON -> {
+                    byte[] bytes = readBytes(cursor);
+                    if (bytes == null || property == null) {
+                        return null;
+                    }
+                    try {
+                        return mapper.readValue(bytes, property.valueType());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("No se ha podido leer " + property.name(), e);
+                    }
+                }
+                default -> throw new IllegalStateException("Tipo de propiedad desconocido en la copia: " + kind);
+            }
+        }
+
+        private String readString(long[] cursor) {
+            byte[] bytes = readBytes(cursor);
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private byte[] readBytes(long[] cursor) {
+            int length = buffer.getInt(cursor[0]);
+            cursor[0] += 4;
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(cursor[0], bytes);
+            cursor[0] += length;
+            return bytes;
+        }
+    }
+
+    private T newInstance() {
+        try {
+            return type.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(type.getSimpleName() + " necesita un constructor sin argumentos", e);
+        }
+    }
+}
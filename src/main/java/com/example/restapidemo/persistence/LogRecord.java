@@ -0,0 +1,15 @@
+package com.example.restapidemo.persistence;
+
+import com.example.restapidemo.store.ChangeType;
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Una línea del write-ahead log
+ *
+ * @param seq   número de secuencia global del cambio
+ * @param store almacén al que pertenece
+ * @param type  tipo de cambio
+ * @param data  entidad completa tras el cambio, o la eliminada
+ */
+public record LogRecord(long seq, String store, ChangeType type, JsonNode data) {
+}
@@ -0,0 +1,92 @@
+package com.example.restapidemo.persistence;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Fichero de solo lectura mapeado en memoria por trozos
+ * Un MappedByteBuffer no pasa de 2 GB, así que el fichero se mapea en trozos
+ * de 1 GB y se lee con posiciones absolutas de tipo long. Los valores que
+ * caen entre dos trozos se montan byte a byte
+ *
+ * Las lecturas absolutas no tocan la posición de los buffers, así que varios
+ * hilos pueden leer a la vez sin sincronizarse
+ */
+final class MappedFile {
+
+    private static final int CHUNK_BITS = 30;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final MappedByteBuffer[] chunks;
+    private final long size;
+
+    private MappedFile(MappedByteBuffer[] chunks, long size) {
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /**
+     * Mapea el fichero entero. El mapeo sigue siendo válido después de cerrar el canal
+     */
+    static MappedFile map(FileChannel channel) throws IOException {
+        long size = channel.size();
+        MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((size + CHUNK_SIZE - 1) >>> CHUNK_BITS)];
+        for (int i = 0; i < chunks.length; i++) {
+            long start = (long) i << CHUNK_BITS;
+            chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_SIZE, size - start));
+        }
+        return new MappedFile(chunks, size);
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)].get((int) (position & CHUNK_MASK));
+    }
+
+    short getShort(long position) {
+        MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int offset = (int) (position & CHUNK_MASK);
+        return offset + Short.BYTES <= chunk.capacity() ? chunk.getShort(offset) : (short) read(position, Short.BYTES);
+    }
+
+    int getInt(long position) {
+        MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int offset = (int) (position & CHUNK_MASK);
+        return offset + Integer.BYTES <= chunk.capacity() ? chunk.getInt(offset) : (int) read(position, Integer.BYTES);
+    }
+
+    long getLong(long position) {
+        MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+        int offset = (int) (position & CHUNK_MASK);
+        return offset + Long.BYTES <= chunk.capacity() ? chunk.getLong(offset) : read(position, Long.BYTES);
+    }
+
+    /**
+     * Copia bytes.length bytes desde esa posición
+     */
+    void get(long position, byte[] bytes) {
+        int copied = 0;
+        while (copied < bytes.length) {
+            MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_BITS)];
+            int offset = (int) (position & CHUNK_MASK);
+            int length = Math.min(bytes.length - copied, chunk.capacity() - offset);
+            chunk.get(offset, bytes, copied, length);
+            copied += length;
+            position += length;
+        }
+    }
+
+    // Entero en big endian de varios bytes, leídos uno a uno
+    private long read(long position, int bytes) {
+        long value = 0;
+        for (int i = 0; i < bytes; i++) {
+            value = (value << 8) | (get(position + i) & 0xFF);
+        }
+        return value;
+    }
+}
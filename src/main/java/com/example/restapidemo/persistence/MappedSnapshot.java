@@ -0,0 +1,206 @@
+package com.example.restapidemo.persistence;
+
+import com.example.restapidemo.store.LazySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copia binaria de los almacenes (ver {@link SnapshotWriter}) abierta con mmap
+ * Abrirla solo lee la cabecera y el directorio: las entidades se construyen
+ * cuando alguien las pide, leyendo directamente de las páginas del fichero
+ * que el sistema operativo va cargando
+ *
+ * El mapeo sigue siendo válido aunque el fichero se sustituya después por
+ * una copia más reciente. Se mapea por trozos ({@link MappedFile}), así que
+ * la copia puede pasar de 2 GB
+ */
+class MappedSnapshot {
+
+    private static final int HEADER_SIZE = 16;
+    private static final int TRAILER_SIZE = 12;
+    private static final int INDEX_ENTRY_SIZE = 16;
+
+    private final MappedFile buffer;
+    private final int version;
+    private final long segment;
+    private final Map<String, Section> sections = new HashMap<>();
+
+    private MappedSnapshot(MappedFile buffer) throws IOException {
+        this.buffer = buffer;
+        long size = buffer.size();
+        if (size < HEADER_SIZE + TRAILER_SIZE
+                || buffer.getInt(0) != SnapshotWriter.MAGIC
+                || buffer.getInt(size - 4) != SnapshotWriter.MAGIC) {
+            throw new IOException("La copia no tiene el formato esperado");
+        }
+        this.version = buffer.getInt(4);
+        if (version != SnapshotWriter.VERSION && version != SnapshotWriter.JSON_VERSION) {
+            throw new IOException("Versión de copia no soportada: " + version);
+        }
+        this.segment = buffer.getLong(8);
+
+        long position = checkedOffset(buffer.getLong(size - TRAILER_SIZE));
+        int count = buffer.getInt(position);
+        position += 4;
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[buffer.getShort(position)];
+            buffer.get(position + 2, name);
+            position += 2 + name.length;
+            Section section = new Section(new String(name, StandardCharsets.UTF_8), buffer.get(position),
+                    buffer.getLong(position + 1), buffer.getInt(position + 9),
+                    checkedOffset(buffer.getLong(position + 13)));
+            position += 21;
+            sections.put(section.name(), section);
+        }
+    }
+
+    /**
+     * Mapea el fichero en memoria y lee su directorio
+     */
+    static MappedSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new MappedSnapshot(MappedFile.map(channel));
+        }
+    }
+
+    /**
+     * Primer segmento del log con cambios posteriores a la copia
+     */
+    long segment() {
+        return segment;
+    }
+
+    Map<String, Section> sections() {
+        return sections;
+    }
+
+    private long checkedOffset(long offset) throws IOException {
+        if (offset < HEADER_SIZE || offset > buffer.size() - TRAILER_SIZE) {
+            throw new IOException("La copia está dañada");
+        }
+        return offset;
+    }
+
+    /**
+     * Una colección dentro de la copia
+     */
+    final class Section {
+
+        private final String name;
+        private final byte kind;
+        private final long nextId;
+        private final int count;
+        private final long dataOffset;
+
+        private Section(String name, byte kind, long nextId, int count, long dataOffset) {
+            this.name = name;
+            this.kind = kind;
+            this.nextId = nextId;
+            this.count = count;
+            this.dataOffset = dataOffset;
+        }
+
+        String name() {
+            return name;
+        }
+
+        long nextId() {
+            return nextId;
+        }
+
+        int count() {
+            return count;
+        }
+
+        /**
+         * Vista perezosa de las entidades de un almacén
+         */
+        <T> LazySource<T> entities(EntityCodec<T> codec) {
+            if (kind != SnapshotWriter.STORE_SECTION) {
+                throw new IllegalStateException(name + " no es un almacén");
+            }
+            return new EntitySource<>(this, codec);
+        }
+
+        /**
+         * idUsuario del par en esa posición
+         */
+        long firstAt(int position) {
+            return buffer.getLong(dataOffset + (long) position * INDEX_ENTRY_SIZE);
+        }
+
+        /**
+         * idCentro del par en esa posición
+         */
+        long secondAt(int position) {
+            return buffer.getLong(dataOffset + (long) position * INDEX_ENTRY_SIZE + 8);
+        }
+    }
+
+    // Las lecturas absolutas no tocan la posición del buffer, así que varios
+    // hilos pueden leer a la vez sin sincronizarse
+    private final class EntitySource<T> implements LazySource<T> {
+
+        private final Section section;
+        private final EntityCodec<T> codec;
+        // null en las copias de la versión 1, con las entidades en JSON
+        private final EntityCodec<T>.Reader reader;
+
+        private EntitySource(Section section, EntityCodec<T> codec) {
+            this.section = section;
+            this.codec = codec;
+            this.reader = version == SnapshotWriter.JSON_VERSION ? null
+                    : codec.reader(buffer, section.dataOffset + (long) section.count * INDEX_ENTRY_SIZE);
+        }
+
+        @Override
+        public int size() {
+            return section.count;
+        }
+
+        @Override
+        public long idAt(int position) {
+            return buffer.getLong(section.dataOffset + (long) position * INDEX_ENTRY_SIZE);
+        }
+
+        @Override
+        public int indexOf(long id) {
+            int low = 0;
+            int high = section.count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midId = idAt(mid);
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public T load(int position) {
+            long offset = buffer.getLong(section.dataOffset + (long) position * INDEX_ENTRY_SIZE + 8);
+            if (reader != null) {
+                return reader.read(offset);
+            }
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            buffer.get(offset + 4, bytes);
+            try {
+                return codec.mapper().readValue(bytes, codec.type());
+            } catch (IOException e) {
+                throw new UncheckedIOException("No se ha podido leer la entidad " + idAt(position) + " de " + section.name, e);
+            }
+        }
+    }
+}
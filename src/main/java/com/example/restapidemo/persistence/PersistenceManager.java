@@ -0,0 +1,387 @@
+package com.example.restapidemo.persistence;
+
+import com.example.restapidemo.model.Identifiable;
+import com.example.restapidemo.model.UserCenter;
+import com.example.restapidemo.store.ChangeType;
+import com.example.restapidemo.store.InMemoryStore;
+import com.example.restapidemo.store.Journal;
+import com.example.restapidemo.store.StoreSnapshot;
+import com.example.restapidemo.store.UserCenterIndex;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Persistencia en disco de los almacenes en memoria
+ * Cada cambio se anota en el {@link WriteAheadLog} antes de responder, y cada
+ * cierto tiempo se guarda una copia completa (snapshot.bin) para que el
+ * arranque solo tenga que leer la copia y los cambios posteriores a ella
+ *
+ * La copia se abre con mmap y los almacenes la usan como origen perezoso: el
+ * servicio arranca sin leer todas las entidades y un hilo en segundo plano
+ * las va cargando en memoria y en los índices
+ *
+ * Las lecturas no pasan por aquí: siguen sirviéndose desde memoria
+ */
+@Component
+public class PersistenceManager implements Journal {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistenceManager.class);
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    // Formato anterior: se sigue leyendo hasta que se guarda la primera copia binaria
+    private static final String LEGACY_SNAPSHOT_FILE = "snapshot.json";
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long snapshotIntervalSeconds;
+    private final long snapshotMinRecords;
+
+    // Mapper propio: el formato en disco no debe depender de la configuración web.
+    // Guarda también los campos que la API solo acepta de entrada (como el hash de la contraseña)
+    private final ObjectMapper mapper = new ObjectMapper().setAnnotationIntrospector(new JacksonAnnotationIntrospector() {
+        @Override
+        public JsonProperty.Access findPropertyAccess(Annotated annotated) {
+            return JsonProperty.Access.AUTO;
+        }
+    });
+    private final Map<String, Persistent> collections = new LinkedHashMap<>();
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+
+    // Estado leído al arrancar, pendiente de aplicar hasta que se registre cada almacén
+    private final Map<String, MappedSnapshot.Section> pendingSections = new HashMap<>();
+    private final Map<String, JsonNode> pendingSnapshots = new HashMap<>();
+    private final Map<String, List<LogRecord>> pendingRecords = new HashMap<>();
+
+    private WriteAheadLog wal;
+    private ScheduledExecutorService scheduler;
+    private long recordsAtLastSnapshot;
+
+    public PersistenceManager(
+            @Value("${app.persistence.enabled:true}") boolean enabled,
+            @Value("${app.persistence.dir:data}") String directory,
+            @Value("${app.persistence.snapshot-interval-seconds:300}") long snapshotIntervalSeconds,
+            @Value("${app.persistence.snapshot-min-records:1000}") long snapshotMinRecords,
+            @Value("${app.persistence.max-batch:512}") int maxBatch) throws IOException {
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+        this.snapshotMinRecords = snapshotMinRecords;
+        if (!enabled) {
+            return;
+        }
+
+        long firstSegment = 1;
+        Path snapshotPath = this.directory.resolve(SNAPSHOT_FILE);
+        Path legacySnapshotPath = this.directory.resolve(LEGACY_SNAPSHOT_FILE);
+        if (Files.exists(snapshotPath)) {
+            MappedSnapshot snapshot = MappedSnapshot.open(snapshotPath);
+            firstSegment = snapshot.segment();
+            pendingSections.putAll(snapshot.sections());
+        } else if (Files.exists(legacySnapshotPath)) {
+            JsonNode snapshot = mapper.readTree(legacySnapshotPath.toFile());
+            firstSegment = snapshot.get("segment").asLong();
+            snapshot.get("stores").fields().forEachRemaining(e -> pendingSnapshots.put(e.getKey(), e.getValue()));
+        }
+        long lastSeq = 0;
+        List<LogRecord> records = WriteAheadLog.read(this.directory, mapper, firstSegment);
+        for (LogRecord record : records) {
+            pendingRecords.computeIfAbsent(record.store(), k -> new ArrayList<>()).add(record);
+            lastSeq = Math.max(lastSeq, record.seq());
+        }
+        log.info("Persistencia: {} almacenes en la copia y {} cambios posteriores en {}",
+                pendingSections.size() + pendingSnapshots.size(), records.size(), this.directory.toAbsolutePath());
+
+        this.wal = new WriteAheadLog(this.directory, mapper, lastSeq + 1, maxBatch);
+    }
+
+    /**
+     * Recupera el estado guardado del almacén y empieza a anotar sus cambios
+     * Debe llamarse antes de que nadie escriba en el almacén
+     */
+    public <T extends Identifiable> void attach(InMemoryStore<T> store, Class<T> type) {
+        register(new StorePersistence<>(store, type));
+    }
+
+    /**
+     * Recupera las asignaciones usuario-centro guardadas y empieza a anotar sus cambios
+     */
+    public void attach(UserCenterIndex index) {
+        register(new UserCenterPersistence(index));
+    }
+
+    @Override
+    public CompletableFuture<Void> append(String store, ChangeType type, Object data) {
+        return wal.append(store, type, data);
+    }
+
+    @Override
+    public void checkWritable() {
+        wal.checkWritable();
+    }
+
+    @Override
+    public CompletableFuture<Void> appendAll(String store, List<Journal.Entry> entries) {
+        return wal.appendAll(store, entries);
+    }
+
+    /**
+     * Las copias periódicas empiezan cuando todos los almacenes ya están registrados
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void startSnapshots() {
+        if (!enabled || snapshotIntervalSeconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            if (wal.appendedRecords() - recordsAtLastSnapshot >= snapshotMinRecords) {
+                snapshot();
+            }
+        }, snapshotIntervalSeconds, snapshotIntervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Guarda una copia completa y borra los segmentos del log que ya cubre
+     * Las escrituras pueden seguir mientras tanto: cada almacén se copia bajo
+     * su propio cerrojo y los cambios posteriores quedan en el segmento nuevo
+     */
+    public void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        snapshotLock.lock();
+        try {
+            long records = wal.appendedRecords();
+            long segment = wal.roll();
+            Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                SnapshotWriter writer = new SnapshotWriter(Channels.newOutputStream(channel), segment);
+                for (Persistent collection : collections.values()) {
+                    collection.writeSnapshot(writer);
+                }
+                writer.finish();
+                channel.force(true);
+            }
+            Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            Files.deleteIfExists(directory.resolve(LEGACY_SNAPSHOT_FILE));
+            wal.deleteSegmentsBefore(segment);
+            recordsAtLastSnapshot = records;
+            log.info("Persistencia: copia guardada, el log continúa en el segmento {}", segment);
+        } catch (IOException e) {
+            log.error("No se ha podido guardar la copia de los almacenes", e);
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        wal.close();
+    }
+
+    private void register(Persistent collection) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            MappedSnapshot.Section section = pendingSections.remove(collection.name());
+            JsonNode snapshot = pendingSnapshots.remove(collection.name());
+            if (section != null) {
+                collection.restoreSnapshot(section);
+            } else if (snapshot != null) {
+                collection.restoreSnapshot(snapshot);
+            }
+            for (LogRecord record : pendingRecords.getOrDefault(collection.name(), List.of())) {
+                collection.replay(record);
+            }
+            pendingRecords.remove(collection.name());
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se ha podido recuperar " + collection.name(), e);
+        }
+        collection.setJournal(this);
+        collections.put(collection.name(), collection);
+        collection.startWarmUp();
+    }
+
+    /**
+     * Lo que necesita el gestor de cada colección persistida
+     * Aplicar un registro varias veces da el mismo resultado, porque la copia
+     * puede incluir ya cambios que también están en el segmento siguiente
+     */
+    private interface Persistent {
+
+        String name();
+
+        void restoreSnapshot(MappedSnapshot.Section section);
+
+        void restoreSnapshot(JsonNode snapshot) throws IOException;
+
+        void replay(LogRecord record) throws IOException;
+
+        void writeSnapshot(SnapshotWriter writer) throws IOException;
+
+        void setJournal(Journal journal);
+
+        /**
+         * Carga en segundo plano lo que se haya dejado pendiente en la copia
+         */
+        default void startWarmUp() {
+        }
+    }
+
+    private final class StorePersistence<T extends Identifiable> implements Persistent {
+
+        private final InMemoryStore<T> store;
+        private final Class<T> type;
+        private final EntityCodec<T> codec;
+
+        private StorePersistence(InMemoryStore<T> store, Class<T> type) {
+            this.store = store;
+            this.type = type;
+            this.codec = EntityCodec.of(mapper, type);
+        }
+
+        @Override
+        public String name() {
+            return store.getName();
+        }
+
+        @Override
+        public void restoreSnapshot(MappedSnapshot.Section section) {
+            store.attachLazy(section.entities(codec), section.nextId());
+        }
+
+        @Override
+        public void restoreSnapshot(JsonNode snapshot) throws IOException {
+            for (JsonNode entity : snapshot.get("entities")) {
+                store.restore(mapper.treeToValue(entity, type));
+            }
+            store.restoreNextId(snapshot.get("nextId").asLong());
+        }
+
+        @Override
+        public void replay(LogRecord record) throws IOException {
+            T entity = mapper.treeToValue(record.data(), type);
+            if (record.type() == ChangeType.DELETED) {
+                store.restoreDelete(entity.getId());
+            } else {
+                store.restore(entity);
+            }
+        }
+
+        @Override
+        public void writeSnapshot(SnapshotWriter writer) throws IOException {
+            StoreSnapshot<T> snapshot = store.snapshot();
+            writer.writeStore(name(), snapshot.nextId(), snapshot.entities(), codec);
+        }
+
+        @Override
+        public void setJournal(Journal journal) {
+            store.setJournal(journal);
+        }
+
+        @Override
+        public void startWarmUp() {
+            Thread thread = new Thread(() -> {
+                long start = System.nanoTime();
+                store.warmUp();
+                log.info("Persistencia: {} cargado en memoria en {} ms", name(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }, "warm-up-" + name());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private final class UserCenterPersistence implements Persistent {
+
+        private final UserCenterIndex index;
+
+        private UserCenterPersistence(UserCenterIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public String name() {
+            return UserCenterIndex.NAME;
+        }
+
+        @Override
+        public void restoreSnapshot(MappedSnapshot.Section section) {
+            // Son pares de números: cargarlos enteros es más barato que mantenerlos perezosos
+            index.markRestored();
+            for (int i = 0; i < section.count(); i++) {
+                index.restoreAdd(section.firstAt(i), section.secondAt(i));
+            }
+        }
+
+        @Override
+        public void restoreSnapshot(JsonNode snapshot) throws IOException {
+            index.markRestored();
+            for (JsonNode node : snapshot.get("entities")) {
+                UserCenter userCenter = mapper.treeToValue(node, UserCenter.class);
+                index.restoreAdd(userCenter.getIdUsuario(), userCenter.getIdCentro());
+            }
+        }
+
+        @Override
+        public void replay(LogRecord record) throws IOException {
+            UserCenter userCenter = mapper.treeToValue(record.data(), UserCenter.class);
+            index.markRestored();
+            if (record.type() == ChangeType.DELETED) {
+                index.restoreRemove(userCenter.getIdUsuario(), userCenter.getIdCentro());
+            } else {
+                index.restoreAdd(userCenter.getIdUsuario(), userCenter.getIdCentro());
+            }
+        }
+
+        @Override
+        public void writeSnapshot(SnapshotWriter writer) throws IOException {
+            writer.writePairs(name(), index.snapshot());
+        }
+
+        @Override
+        public void setJournal(Journal journal) {
+            index.setJournal(journal);
+        }
+    }
+}
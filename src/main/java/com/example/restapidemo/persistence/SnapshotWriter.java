@@ -0,0 +1,126 @@
+package com.example.restapidemo.persistence;
+
+import com.example.restapidemo.model.Identifiable;
+import com.example.restapidemo.model.UserCenter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Escribe la copia binaria de los almacenes que después lee {@link MappedSnapshot}
+ *
+ * Formato (enteros en big endian):
+ * <pre>
+ * cabecera   magic "RSNP" | versión (int) | segmento del log (long)
+ * almacén    por entidad: sus propiedades en binario (ver {@link EntityCodec})
+ *            índice: por entidad, en orden de ID, ID (long) + posición del registro (long)
+ *            esquema de las entidades, justo detrás del índice
+ * pares      por par: idUsuario (long) + idCentro (long)
+ * directorio nº de secciones (int) y por sección: nombre, tipo, nextId, nº de elementos y posición de sus datos
+ * final      posición del directorio (long) | magic "RSNP"
+ * </pre>
+ * El índice con posiciones fijas es lo que permite leer una entidad suelta
+ * sin recorrer el fichero. En la versión 1 cada entidad era su JSON con la
+ * longitud delante; {@link MappedSnapshot} sigue leyendo ese formato
+ */
+class SnapshotWriter {
+
+    static final int MAGIC = 0x52534E50;
+    static final int VERSION = 2;
+    static final int JSON_VERSION = 1;
+    static final byte STORE_SECTION = 1;
+    static final byte PAIR_SECTION = 2;
+
+    private final CountingOutputStream counter;
+    private final DataOutputStream out;
+    private final List<SectionEntry> directory = new ArrayList<>();
+
+    SnapshotWriter(OutputStream target, long segment) throws IOException {
+        this.counter = new CountingOutputStream(new BufferedOutputStream(target, 1 << 16));
+        this.out = new DataOutputStream(counter);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(segment);
+    }
+
+    /**
+     * Añade un almacén. Las entidades deben venir en orden creciente de ID
+     */
+    <T extends Identifiable> void writeStore(String name, long nextId, List<T> entities, EntityCodec<T> codec) throws IOException {
+        long[] offsets = new long[entities.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = counter.position;
+            codec.write(out, entities.get(i));
+        }
+        long indexOffset = counter.position;
+        for (int i = 0; i < offsets.length; i++) {
+            out.writeLong(entities.get(i).getId());
+            out.writeLong(offsets[i]);
+        }
+        codec.writeSchema(out);
+        directory.add(new SectionEntry(name, STORE_SECTION, nextId, offsets.length, indexOffset));
+    }
+
+    /**
+     * Añade las asignaciones usuario-centro
+     */
+    void writePairs(String name, List<UserCenter> pairs) throws IOException {
+        long dataOffset = counter.position;
+        for (UserCenter pair : pairs) {
+            out.writeLong(pair.getIdUsuario());
+            out.writeLong(pair.getIdCentro());
+        }
+        directory.add(new SectionEntry(name, PAIR_SECTION, 0, pairs.size(), dataOffset));
+    }
+
+    /**
+     * Escribe el directorio y el final del fichero
+     */
+    void finish() throws IOException {
+        long directoryOffset = counter.position;
+        out.writeInt(directory.size());
+        for (SectionEntry section : directory) {
+            byte[] name = section.name().getBytes(StandardCharsets.UTF_8);
+            out.writeShort(name.length);
+            out.write(name);
+            out.writeByte(section.kind());
+            out.writeLong(section.nextId());
+            out.writeInt(section.count());
+            out.writeLong(section.dataOffset());
+        }
+        out.writeLong(directoryOffset);
+        out.writeInt(MAGIC);
+        out.flush();
+    }
+
+    private record SectionEntry(String name, byte kind, long nextId, int count, long dataOffset) {
+    }
+
+    // DataOutputStream.size() se queda en Integer.MAX_VALUE: la posición se cuenta aparte
+    private static final class CountingOutputStream extends FilterOutputStream {
+
+        private long position;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.restapidemo.persistence;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.restapidemo.store.ChangeType;
+import com.example.restapidemo.store.Journal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Write-ahead log en disco con commit en grupo
+ * Cada cambio se guarda como una línea JSON en el segmento actual
+ * (wal-000001.log, wal-000002.log...). Un único hilo escritor recoge todos
+ * los cambios pendientes, los escribe juntos y hace un solo fsync por lote,
+ * así el coste del fsync se reparte entre todas las peticiones que llegan a la vez
+ *
+ * Si una escritura o un fsync fallan, el segmento puede quedar con un lote a
+ * medias y no se sabe qué llegó al disco: el log se detiene y todos los
+ * cambios siguientes fallan con el mismo error, en lugar de escribir detrás
+ * de ese lote cambios que al leer se perderían. Lo mismo después de close()
+ */
+public class WriteAheadLog implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+    private static final Pattern SEGMENT_NAME = Pattern.compile("wal-(\\d+)\\.log");
+
+    private final Path directory;
+    private final ObjectMapper mapper;
+    private final int maxBatch;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicLong nextSeq;
+    private final AtomicLong appendedRecords = new AtomicLong();
+    private final Thread writer;
+
+    private volatile boolean running = true;
+    // Error que ha detenido el log (o el cierre): a partir de ahí no se escribe nada más
+    private volatile IOException failure;
+    private FileChannel channel;
+    private volatile long segment;
+
+    /**
+     * Abre el log empezando un segmento nuevo, posterior a los que ya existan,
+     * para no escribir nunca detrás de una línea que pudo quedar a medias
+     *
+     * @param firstSeq primer número de secuencia a asignar
+     * @param maxBatch máximo de cambios que se escriben con un mismo fsync
+     */
+    public WriteAheadLog(Path directory, ObjectMapper mapper, long firstSeq, int maxBatch) throws IOException {
+        this.directory = directory;
+        this.mapper = mapper;
+        this.maxBatch = maxBatch;
+        this.nextSeq = new AtomicLong(firstSeq);
+        Files.createDirectories(directory);
+        List<Long> existing = listSegments(directory);
+        this.segment = existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1;
+        this.channel = open(segment);
+
+        this.writer = new Thread(this::writeLoop, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Encola un cambio para escribirlo
+     * Devuelve un futuro que se completa cuando el cambio está en disco
+     */
+    public CompletableFuture<Void> append(String store, ChangeType type, Object data) {
+        if (failure != null) {
+            return CompletableFuture.failedFuture(failure);
+        }
+        byte[] bytes;
+        try {
+            bytes = mapper.writeValueAsBytes(new Line(nextSeq.getAndIncrement(), store, type, data));
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Pending pending = new Pending(bytes, false);
+        enqueue(pending);
+        appendedRecords.incrementAndGet();
+        return pending.done;
+    }
+
+    /**
+     * Lanza el error que ha detenido el log, si lo hay
+     */
+    public void checkWritable() {
+        IOException error = failure;
+        if (error != null) {
+            throw new UncheckedIOException(error);
+        }
+    }
+
+    /**
+     * Encola varios cambios para escribirlos juntos, con números de secuencia
+     * consecutivos y un único futuro para todos
+     */
+    public CompletableFuture<Void> appendAll(String store, List<Journal.Entry> entries) {
+        if (failure != null) {
+            return CompletableFuture.failedFuture(failure);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 256);
+        long firstSeq = nextSeq.getAndAdd(entries.size());
+        try {
+            for (int i = 0; i < entries.size(); i++) {
+                Journal.Entry entry = entries.get(i);
+                if (i > 0) {
+                    bytes.write('\n');
+                }
+                bytes.writeBytes(mapper.writeValueAsBytes(new Line(firstSeq + i, store, entry.type(), entry.data())));
+            }
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        Pending pending = new Pending(bytes.toByteArray(), false);
+        enqueue(pending);
+        appendedRecords.addAndGet(entries.size());
+        return pending.done;
+    }
+
+    /**
+     * Cierra el segmento actual y empieza otro
+     * Todo lo encolado antes queda en el segmento anterior
+     *
+     * @return número del segmento nuevo
+     */
+    public long roll() throws IOException {
+        Pending marker = new Pending(null, true);
+        enqueue(marker);
+        try {
+            marker.done.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+        return segment;
+    }
+
+    /**
+     * Cambios anotados desde que se abrió el log
+     */
+    public long appendedRecords() {
+        return appendedRecords.get();
+    }
+
+    /**
+     * Borra los segmentos anteriores al indicado, que ya están cubiertos por una copia
+     */
+    public void deleteSegmentsBefore(long firstKept) throws IOException {
+        for (long number : listSegments(directory)) {
+            if (number < firstKept) {
+                Files.deleteIfExists(segmentPath(directory, number));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (failure == null) {
+            failure = new IOException("El WAL está cerrado");
+        }
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+        // Lo que se encoló cuando el escritor ya había terminado
+        failQueued();
+    }
+
+    /**
+     * Lee los registros de los segmentos a partir del indicado, en orden
+     * Solo se acepta una línea que no se puede leer si es la última del último
+     * segmento: es un cambio que se estaba escribiendo al caerse el servidor y
+     * que nunca se confirmó. Se recorta del fichero para que no quede en medio
+     * del log cuando se abra el segmento siguiente. En cualquier otro sitio hay
+     * cambios confirmados detrás, y el arranque falla en lugar de perderlos
+     */
+    public static List<LogRecord> read(Path directory, ObjectMapper mapper, long fromSegment) throws IOException {
+        List<LogRecord> records = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return records;
+        }
+        List<Long> segments = listSegments(directory).stream().filter(number -> number >= fromSegment).toList();
+        for (int i = 0; i < segments.size(); i++) {
+            long number = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            Path path = segmentPath(directory, number);
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(path), 1 << 16)) {
+                ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+                long lineStart = 0;
+                long position = 0;
+                // Posición de una línea que no se ha podido leer, o -1
+                long damaged = -1;
+                int b;
+                do {
+                    b = in.read();
+                    if (b != -1 && b != '\n') {
+                        line.write(b);
+                        position++;
+                        continue;
+                    }
+                    String text = line.toString(StandardCharsets.UTF_8);
+                    if (!text.isBlank()) {
+                        if (damaged >= 0) {
+                            throw new IOException("Registro dañado en el segmento " + number
+                                    + " del WAL seguido de otros cambios (posición " + damaged + ")");
+                        }
+                        try {
+                            records.add(mapper.readValue(text, LogRecord.class));
+                        } catch (JsonProcessingException e) {
+                            damaged = lineStart;
+                        }
+                    }
+                    line.reset();
+                    position++;
+                    lineStart = position;
+                } while (b != -1);
+
+                if (damaged >= 0) {
+                    if (!last) {
+                        throw new IOException("Registro dañado al final del segmento " + number
+                                + " del WAL, que no es el último");
+                    }
+                    log.warn("Registro incompleto al final del segmento {} del WAL: se descarta", number);
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                        channel.truncate(damaged);
+                        channel.force(true);
+                    }
+                }
+            }
+        }
+        return records;
+    }
+
+    static List<Long> listSegments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> SEGMENT_NAME.matcher(path.getFileName().toString()))
+                    .filter(Matcher::matches)
+                    .map(matcher -> Long.parseLong(matcher.group(1)))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("wal-%06d.log", number));
+    }
+
+    private FileChannel open(long number) throws IOException {
+        return FileChannel.open(segmentPath(directory, number),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        List<Pending> written = new ArrayList<>(maxBatch);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatch - 1);
+            } catch (InterruptedException e) {
+                // Al cerrar se interrumpe la espera pero se vacía la cola antes de salir
+                if (running) {
+                    continue;
+                }
+            }
+
+            for (Pending pending : batch) {
+                if (failure != null) {
+                    pending.done.completeExceptionally(failure);
+                } else if (pending.roll) {
+                    commit(buffer, written);
+                    rollNow(pending);
+                } else {
+                    buffer.writeBytes(pending.bytes);
+                    buffer.write('\n');
+                    written.add(pending);
+                }
+            }
+            commit(buffer, written);
+            batch.clear();
+        }
+    }
+
+    // Si el log ya no escribe, nada encolado puede quedarse esperando
+    private void enqueue(Pending pending) {
+        queue.add(pending);
+        if (failure != null && !writer.isAlive()) {
+            failQueued();
+        }
+    }
+
+    private void failQueued() {
+        Pending pending;
+        while ((pending = queue.poll()) != null) {
+            pending.done.completeExceptionally(failure);
+        }
+    }
+
+    // Escribe el lote acumulado con un único fsync y completa sus futuros
+    private void commit(ByteArrayOutputStream buffer, List<Pending> written) {
+        if (written.isEmpty()) {
+            return;
+        }
+        try {
+            ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(false);
+            written.forEach(pending -> pending.done.complete(null));
+        } catch (IOException e) {
+            log.error("No se ha podido escribir en el WAL: no se anotan más cambios hasta reiniciar", e);
+            failure = e;
+            written.forEach(pending -> pending.done.completeExceptionally(e));
+        } finally {
+            buffer.reset();
+            written.clear();
+        }
+    }
+
+    private void rollNow(Pending marker) {
+        try {
+            channel.force(true);
+            channel.close();
+            segment++;
+            channel = open(segment);
+            marker.done.complete(null);
+        } catch (IOException e) {
+            log.error("No se ha podido empezar un segmento nuevo del WAL: no se anotan más cambios hasta reiniciar", e);
+            failure = e;
+            marker.done.completeExceptionally(e);
+        }
+    }
+
+    // Misma forma que LogRecord, pero con la entidad sin convertir a árbol JSON
+    private record Line(long seq, String store, ChangeType type, Object data) {
+    }
+
+    private static final class Pending {
+        private final byte[] bytes;
+        private final boolean roll;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Pending(byte[] bytes, boolean roll) {
+            this.bytes = bytes;
+            this.roll = roll;
+        }
+    }
+}
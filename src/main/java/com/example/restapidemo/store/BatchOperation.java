@@ -0,0 +1,26 @@
+package com.example.restapidemo.store;
+
+import java.util.function.Consumer;
+
+/**
+ * Una operación dentro de un lote aplicado con {@link InMemoryStore#applyBatch}
+ *
+ * @param type    CREATED, UPDATED o DELETED
+ * @param id      ID de la entidad a actualizar o eliminar (null al crear)
+ * @param entity  entidad a crear (null en el resto)
+ * @param changes cambios a aplicar al actualizar (null en el resto)
+ */
+public record BatchOperation<T>(ChangeType type, Long id, T entity, Consumer<T> changes) {
+
+    public static <T> BatchOperation<T> create(T entity) {
+        return new BatchOperation<>(ChangeType.CREATED, null, entity, null);
+    }
+
+    public static <T> BatchOperation<T> update(Long id, Consumer<T> changes) {
+        return new BatchOperation<>(ChangeType.UPDATED, id, null, changes);
+    }
+
+    public static <T> BatchOperation<T> delete(Long id) {
+        return new BatchOperation<>(ChangeType.DELETED, id, null, null);
+    }
+}
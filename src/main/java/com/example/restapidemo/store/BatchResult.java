@@ -0,0 +1,14 @@
+package com.example.restapidemo.store;
+
+/**
+ * Resultado de una operación de un lote
+ *
+ * @param type   cambio aplicado, o null si la entidad no existía
+ * @param entity entidad creada, actualizada o eliminada (null si no existía)
+ */
+public record BatchResult<T>(ChangeType type, T entity) {
+
+    public boolean found() {
+        return type != null;
+    }
+}
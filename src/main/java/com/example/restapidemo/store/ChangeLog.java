@@ -0,0 +1,52 @@
+package com.example.restapidemo.store;
+
+import com.example.restapidemo.model.Identifiable;
+
+/**
+ * Versión de modificación de cada entidad de un almacén, con lápidas para las
+ * eliminadas, para responder "qué ha cambiado desde la versión N" sin recorrer
+ * el almacén (ver {@link VersionLog})
+ */
+public class ChangeLog<T extends Identifiable> extends StoreIndex<T> {
+
+    private final VersionLog<Long, T> log;
+
+    public ChangeLog(int maxTombstones) {
+        this.log = new VersionLog<>(maxTombstones);
+    }
+
+    @Override
+    public void onChange(ChangeType type, T entity) {
+        log.record(entity.getId(), type == ChangeType.DELETED ? null : entity);
+    }
+
+    /**
+     * Cambios posteriores a una versión (ver {@link VersionLog#since})
+     */
+    public VersionLog.Slice<Long, T> since(long since, Integer limit) {
+        awaitReady();
+        return log.since(since, limit);
+    }
+
+    /**
+     * Versión del último cambio de la entidad, o 0 si no se conoce
+     */
+    public long versionOf(long id) {
+        return log.versionOf(id);
+    }
+
+    /**
+     * Versión del último cambio del almacén
+     */
+    public long version() {
+        return log.version();
+    }
+
+    public int size() {
+        return log.size();
+    }
+
+    public int tombstoneCount() {
+        return log.tombstoneCount();
+    }
+}
@@ -0,0 +1,10 @@
+package com.example.restapidemo.store;
+
+/**
+ * Tipo de cambio que se notifica a los listeners de un almacén
+ */
+public enum ChangeType {
+    CREATED,
+    UPDATED,
+    DELETED
+}
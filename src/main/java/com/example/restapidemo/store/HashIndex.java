@@ -0,0 +1,134 @@
+package com.example.restapidemo.store;
+
+import com.example.restapidemo.model.Identifiable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Índice por valor exacto de un campo: clave -> IDs con esa clave
+ * Buscar cuesta lo mismo haya 10 o un millón de entidades
+ *
+ * Opcionalmente mantiene un {@link BloomFilter} delante del índice, para que
+ * las búsquedas de claves que no existen se descarten sin bloquear
+ */
+public class HashIndex<T extends Identifiable, K> extends StoreIndex<T> {
+
+    private static final long[] NONE = new long[0];
+    private static final int INITIAL_FILTER_CAPACITY = 1024;
+
+    private final Function<T, K> keyExtractor;
+    private final Map<K, LongHashSet> ids = new HashMap<>();
+    private final Map<Long, K> keys = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 0 si no hay filtro. El filtro se reconstruye más grande al llenarse
+    private final double falsePositiveRate;
+    private volatile BloomFilter filter;
+    private int filterKeys;
+
+    public HashIndex(Function<T, K> keyExtractor) {
+        this(keyExtractor, 0);
+    }
+
+    /**
+     * @param falsePositiveRate proporción de claves inexistentes que el filtro deja pasar al índice
+     */
+    public HashIndex(Function<T, K> keyExtractor, double falsePositiveRate) {
+        this.keyExtractor = keyExtractor;
+        this.falsePositiveRate = falsePositiveRate;
+        if (falsePositiveRate > 0) {
+            this.filter = new BloomFilter(INITIAL_FILTER_CAPACITY, falsePositiveRate);
+        }
+    }
+
+    @Override
+    public void onChange(ChangeType type, T entity) {
+        K key = type == ChangeType.DELETED ? null : keyExtractor.apply(entity);
+        lock.writeLock().lock();
+        try {
+            K previous = key == null ? keys.remove(entity.getId()) : keys.put(entity.getId(), key);
+            if (key != null && key.equals(previous)) {
+                return;
+            }
+            if (previous != null) {
+                LongHashSet set = ids.get(previous);
+                if (set != null && set.remove(entity.getId()) && set.isEmpty()) {
+                    ids.remove(previous);
+                }
+            }
+            if (key != null && ids.computeIfAbsent(key, k -> new LongHashSet(1)).add(entity.getId())) {
+                addToFilter(key);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve, ordenados, los IDs con esa clave
+     */
+    public long[] find(K key) {
+        if (key == null) {
+            return NONE;
+        }
+        awaitReady();
+        if (!filterAccepts(key)) {
+            return NONE;
+        }
+        lock.readLock().lock();
+        try {
+            LongHashSet set = ids.get(key);
+            return set == null ? NONE : set.toSortedArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * false si la clave seguro que no está; sin filtro siempre devuelve true
+     * Espera, como find, a que el almacén termine de cargar: antes el filtro
+     * aún no tiene todas las claves y daría falsos negativos
+     */
+    public boolean mightContain(K key) {
+        awaitReady();
+        return filterAccepts(key);
+    }
+
+    private boolean filterAccepts(K key) {
+        BloomFilter current = filter;
+        return current == null || current.mightContain(key.toString());
+    }
+
+    /**
+     * Número de entidades indexadas
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keys.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Con el cerrojo de escritura. Las claves borradas no se quitan del filtro:
+    // solo desaparecen cuando se reconstruye
+    private void addToFilter(K key) {
+        if (filter == null) {
+            return;
+        }
+        filterKeys++;
+        if (filterKeys <= filter.capacity()) {
+            filter.add(key.toString());
+            return;
+        }
+        BloomFilter rebuilt = new BloomFilter(Math.max(filter.capacity(), ids.size()) * 2, falsePositiveRate);
+        ids.keySet().forEach(existing -> rebuilt.add(existing.toString()));
+        filterKeys = ids.size();
+        filter = rebuilt;
+    }
+}
@@ -0,0 +1,554 @@
+package com.example.restapidemo.store;
+
+import com.example.restapidemo.model.Identifiable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Almacén en memoria para entidades con ID numérico
+ * Guarda las entidades en un mapa concurrente indexado por ID, de forma que
+ * buscar, actualizar y eliminar por ID no recorre toda la colección y es
+ * seguro desde varios hilos a la vez
+ *
+ * Además del mapa por ID mantiene las entidades ordenadas por ID y, si se
+ * registran, índices ordenados por otros campos para paginar por cursor
+ *
+ * Las lecturas no bloquean. Las escrituras pasan por un único cerrojo para
+ * que los listeners (índices secundarios) y el {@link Journal} vean los
+ * cambios en el mismo orden en el que se aplican. El cerrojo es un
+ * ReentrantLock y no synchronized para que, con hilos virtuales, un hilo
+ * que espera no deje bloqueado el hilo del sistema que lo ejecuta
+ *
+ * Cada escritura se aplica en memoria y después espera, fuera del cerrojo, a
+ * que el journal la haga duradera. Si esa escritura en disco falla, quien la
+ * pidió recibe el error pero el cambio ya es visible y no se deshace: queda en
+ * memoria hasta reiniciar, y al reiniciar desaparece. Después de ese fallo (o
+ * al cerrar) el journal no acepta más cambios y las escrituras siguientes
+ * fallan antes de tocar la memoria
+ *
+ * Al arrancar desde una copia en disco las entidades pueden cargarse de forma
+ * perezosa ({@link #attachLazy}): la búsqueda por ID funciona desde el primer
+ * momento y las consultas que recorren el almacén o sus índices esperan a que
+ * {@link #warmUp()} termine de cargarlo todo
+ */
+public class InMemoryStore<T extends Identifiable> {
+
+    private final String name;
+    private final ConcurrentHashMap<Long, T> entities = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, T> entitiesInOrder = new ConcurrentSkipListMap<>();
+    private final Map<String, SortedIndex<T, ?>> sortIndexes = new ConcurrentHashMap<>();
+    private final List<StoreListener<T>> listeners = new CopyOnWriteArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Journal journal = Journal.NONE;
+
+    // Copia en disco pendiente de cargar: null cuando todo está ya en memoria
+    private volatile LazySource<T> lazy;
+    private volatile CountDownLatch warmedUp;
+    // IDs de la copia borrados antes de cargarse, para no resucitarlos (protegido por writeLock)
+    private LongHashSet lazyRemoved = new LongHashSet();
+
+    private static final int WARM_UP_CHUNK = 1024;
+
+    // Sube con cada cambio que ven los listeners. Solo se escribe con writeLock;
+    // sirve para saber si algo guardado a partir del almacén (como una respuesta ya serializada) sigue valiendo
+    private volatile long version;
+
+    // Contador atómico para que dos peticiones simultáneas nunca reciban el mismo ID
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    public InMemoryStore(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Número de cambios aplicados hasta ahora. Si no ha cambiado entre dos
+     * lecturas, el contenido del almacén tampoco
+     */
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Indica dónde anotar los cambios para que sobrevivan a un reinicio
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * true si nunca se ha creado ninguna entidad, ni en esta ejecución ni
+     * en las recuperadas del disco. Sirve para cargar datos de ejemplo solo
+     * la primera vez
+     */
+    public boolean isPristine() {
+        return nextId.get() == 1;
+    }
+
+    /**
+     * Registra un listener y le pasa las entidades que ya existen
+     * para que un índice creado tarde empiece completo
+     */
+    public void addListener(StoreListener<T> listener) {
+        if (listener instanceof StoreIndex<T> index) {
+            index.bindReadBarrier(this::awaitWarm);
+        }
+        writeLock.lock();
+        try {
+            entities.values().forEach(entity -> listener.onChange(ChangeType.CREATED, entity));
+            listeners.add(listener);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Registra un índice ordenado por un campo, usable después en findPage
+     *
+     * @param field     nombre del campo tal y como se recibe en el parámetro "sort"
+     * @param key       obtiene el valor del campo
+     * @param keyParser reconstruye el valor a partir de un cursor
+     */
+    public <K extends Comparable<K>> void addSortIndex(String field, Function<T, K> key, Function<String, K> keyParser) {
+        SortedIndex<T, K> index = new SortedIndex<>(key, keyParser);
+        addListener(index);
+        sortIndexes.put(field, index);
+    }
+
+    /**
+     * Asigna un ID nuevo a la entidad y la guarda
+     */
+    public T create(T entity) {
+        journal.checkWritable();
+        CompletableFuture<Void> durable;
+        writeLock.lock();
+        try {
+            entity.setId(nextId.getAndIncrement());
+            entities.put(entity.getId(), entity);
+            entitiesInOrder.put(entity.getId(), entity);
+            notifyListeners(ChangeType.CREATED, entity);
+            durable = journal.append(name, ChangeType.CREATED, entity);
+        } finally {
+            writeLock.unlock();
+        }
+        Journal.await(durable);
+        return entity;
+    }
+
+    /**
+     * Busca una entidad por su ID
+     */
+    public Optional<T> findById(Long id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        T entity = entities.get(id);
+        if (entity == null && lazy != null) {
+            writeLock.lock();
+            try {
+                entity = lookupLocked(id);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        return Optional.ofNullable(entity);
+    }
+
+    /**
+     * Busca varias entidades por ID manteniendo el orden recibido
+     * Los IDs que ya no existen se ignoran
+     */
+    public List<T> findAllById(long[] ids) {
+        awaitWarm();
+        List<T> found = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            T entity = entities.get(id);
+            if (entity != null) {
+                found.add(entity);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Devuelve una copia de todas las entidades ordenadas por ID
+     * La copia se puede recorrer aunque otros hilos modifiquen el almacén
+     */
+    public List<T> findAll() {
+        awaitWarm();
+        return new ArrayList<>(entitiesInOrder.values());
+    }
+
+    /**
+     * Recorre las entidades en orden de ID sin copiarlas
+     * El recorrido es débilmente consistente: no falla si hay escrituras a la vez,
+     * pero puede reflejar o no los cambios hechos durante el mismo
+     */
+    public Iterable<T> iterateInOrder() {
+        awaitWarm();
+        return Collections.unmodifiableCollection(entitiesInOrder.values());
+    }
+
+    /**
+     * Devuelve una página de entidades a partir de un cursor
+     *
+     * @param sort       campo con índice ordenado, o null para ordenar por ID
+     * @param after      cursor devuelto por la página anterior, o null para empezar
+     * @param limit      tamaño máximo de la página, o null para devolver todo
+     * @param descending recorrer de mayor a menor
+     * @throws IllegalArgumentException si el campo no tiene índice o el cursor no es válido
+     */
+    public Page<T> findPage(String sort, String after, Integer limit, boolean descending) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("El límite debe ser mayor que 0");
+        }
+        if (sort != null && !sort.equals("id")) {
+            SortedIndex<T, ?> index = sortIndexes.get(sort);
+            if (index == null) {
+                throw new IllegalArgumentException("No se puede ordenar por " + sort);
+            }
+            return index.page(after, limit, descending, entities::get);
+        }
+
+        awaitWarm();
+        NavigableMap<Long, T> view = descending ? entitiesInOrder.descendingMap() : entitiesInOrder;
+        if (after != null) {
+            view = view.tailMap(parseId(after), false);
+        }
+        int max = limit == null ? Integer.MAX_VALUE : limit;
+        List<T> items = new ArrayList<>(Math.min(max, 64));
+        for (T entity : view.values()) {
+            if (items.size() == max) {
+                return new Page<>(items, String.valueOf(items.get(items.size() - 1).getId()));
+            }
+            items.add(entity);
+        }
+        return new Page<>(items, null);
+    }
+
+    /**
+     * Devuelve una página de las entidades cuyo campo está entre from y to (ambos incluidos),
+     * ordenadas por ese campo
+     *
+     * @param sort campo con índice ordenado
+     * @param from valor mínimo en el mismo formato que los cursores, o null para no limitar
+     * @param to   valor máximo, o null para no limitar
+     * @throws IllegalArgumentException si el campo no tiene índice o algún valor no es válido
+     */
+    public Page<T> findRange(String sort, String from, String to, String after, Integer limit, boolean descending) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("El límite debe ser mayor que 0");
+        }
+        SortedIndex<T, ?> index = sortIndexes.get(sort);
+        if (index == null) {
+            throw new IllegalArgumentException("No se puede filtrar por " + sort);
+        }
+        return index.range(from, to, after, limit, descending, entities::get);
+    }
+
+    /**
+     * Aplica los cambios a la entidad con ese ID de forma atómica
+     * Devuelve la entidad actualizada o vacío si no existe
+     */
+    public Optional<T> update(Long id, Consumer<T> changes) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        journal.checkWritable();
+        T entity;
+        CompletableFuture<Void> durable;
+        writeLock.lock();
+        try {
+            entity = lookupLocked(id);
+            if (entity == null) {
+                return Optional.empty();
+            }
+            changes.accept(entity);
+            notifyListeners(ChangeType.UPDATED, entity);
+            durable = journal.append(name, ChangeType.UPDATED, entity);
+        } finally {
+            writeLock.unlock();
+        }
+        Journal.await(durable);
+        return Optional.of(entity);
+    }
+
+    /**
+     * Elimina la entidad con ese ID
+     * Devuelve true si existía
+     */
+    public boolean delete(Long id) {
+        if (id == null) {
+            return false;
+        }
+        journal.checkWritable();
+        CompletableFuture<Void> durable;
+        writeLock.lock();
+        try {
+            T removed = lookupLocked(id);
+            if (removed == null) {
+                return false;
+            }
+            removeLocked(id);
+            notifyListeners(ChangeType.DELETED, removed);
+            durable = journal.append(name, ChangeType.DELETED, removed);
+        } finally {
+            writeLock.unlock();
+        }
+        Journal.await(durable);
+        return true;
+    }
+
+    /**
+     * Aplica varias operaciones en una sola sección de escritura
+     * Los IDs de las altas se reservan de una vez y todos los cambios se anotan
+     * en el journal como una única escritura. Una operación sobre un ID que no
+     * existe no detiene el resto: su resultado queda sin tipo
+     *
+     * @return un resultado por operación, en el mismo orden
+     */
+    public List<BatchResult<T>> applyBatch(List<BatchOperation<T>> operations) {
+        List<BatchResult<T>> results = new ArrayList<>(operations.size());
+        List<Journal.Entry> changes = new ArrayList<>(operations.size());
+        int creates = (int) operations.stream().filter(op -> op.type() == ChangeType.CREATED).count();
+        journal.checkWritable();
+        CompletableFuture<Void> durable;
+        writeLock.lock();
+        try {
+            long id = nextId.getAndAdd(creates);
+            for (BatchOperation<T> operation : operations) {
+                T entity = switch (operation.type()) {
+                    case CREATED -> {
+                        T created = operation.entity();
+                        created.setId(id++);
+                        entities.put(created.getId(), created);
+                        entitiesInOrder.put(created.getId(), created);
+                        yield created;
+                    }
+                    case UPDATED -> {
+                        T updated = lookupLocked(operation.id());
+                        if (updated != null) {
+                            operation.changes().accept(updated);
+                        }
+                        yield updated;
+                    }
+                    case DELETED -> {
+                        T removed = lookupLocked(operation.id());
+                        if (removed != null) {
+                            removeLocked(removed.getId());
+                        }
+                        yield removed;
+                    }
+                };
+                if (entity == null) {
+                    results.add(new BatchResult<>(null, null));
+                    continue;
+                }
+                notifyListeners(operation.type(), entity);
+                changes.add(new Journal.Entry(operation.type(), entity));
+                results.add(new BatchResult<>(operation.type(), entity));
+            }
+            durable = changes.isEmpty() ? CompletableFuture.completedFuture(null) : journal.appendAll(name, changes);
+        } finally {
+            writeLock.unlock();
+        }
+        Journal.await(durable);
+        return results;
+    }
+
+    /**
+     * Número de entidades. Mientras se carga una copia perezosa solo cuenta las ya cargadas
+     */
+    public int size() {
+        return entities.size();
+    }
+
+    // Operaciones usadas al recuperar el estado desde disco: aplican el cambio
+    // y avisan a los índices, pero no lo vuelven a anotar en el journal
+
+    /**
+     * Guarda la entidad con el ID que ya trae, sustituyendo a la anterior si la hay
+     */
+    public void restore(T entity) {
+        writeLock.lock();
+        try {
+            T previous = entities.put(entity.getId(), entity);
+            entitiesInOrder.put(entity.getId(), entity);
+            nextId.accumulateAndGet(entity.getId() + 1, Math::max);
+            notifyListeners(previous == null ? ChangeType.CREATED : ChangeType.UPDATED, entity);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Elimina la entidad si existe
+     */
+    public void restoreDelete(Long id) {
+        writeLock.lock();
+        try {
+            T removed = entities.get(id);
+            removeLocked(id);
+            if (removed != null) {
+                notifyListeners(ChangeType.DELETED, removed);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Evita que se reutilicen IDs de entidades que se borraron antes de la copia
+     */
+    public void restoreNextId(long next) {
+        nextId.accumulateAndGet(next, Math::max);
+    }
+
+    /**
+     * Copia consistente del almacén: ninguna escritura queda a medias en ella
+     */
+    public StoreSnapshot<T> snapshot() {
+        awaitWarm();
+        writeLock.lock();
+        try {
+            return new StoreSnapshot<>(nextId.get(), new ArrayList<>(entitiesInOrder.values()));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Usa una copia en disco como origen perezoso de entidades
+     * Debe llamarse al recuperar el estado, antes de aplicar el log y de {@link #warmUp()}
+     */
+    public void attachLazy(LazySource<T> source, long next) {
+        writeLock.lock();
+        try {
+            warmedUp = new CountDownLatch(1);
+            lazy = source;
+            restoreNextId(next);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Carga en memoria (y en los índices) todas las entidades de la copia perezosa
+     * Va por bloques para no tener parado el almacén mientras tanto
+     */
+    public void warmUp() {
+        LazySource<T> source = lazy;
+        if (source == null) {
+            return;
+        }
+        for (int from = 0; from < source.size(); from += WARM_UP_CHUNK) {
+            writeLock.lock();
+            try {
+                int to = Math.min(from + WARM_UP_CHUNK, source.size());
+                for (int position = from; position < to; position++) {
+                    long id = source.idAt(position);
+                    if (!entities.containsKey(id) && !lazyRemoved.contains(id)) {
+                        putLocked(source.load(position));
+                    }
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        }
+        writeLock.lock();
+        try {
+            lazy = null;
+            lazyRemoved = new LongHashSet();
+        } finally {
+            writeLock.unlock();
+        }
+        warmedUp.countDown();
+    }
+
+    /**
+     * Espera a que la copia perezosa esté cargada entera (no espera si no hay)
+     */
+    public void awaitWarm() {
+        CountDownLatch latch = warmedUp;
+        if (latch == null || latch.getCount() == 0) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Busca en memoria y, si aún no se ha cargado, en la copia perezosa (con writeLock)
+    private T lookupLocked(Long id) {
+        if (id == null) {
+            return null;
+        }
+        T entity = entities.get(id);
+        LazySource<T> source = lazy;
+        if (entity != null || source == null || lazyRemoved.contains(id)) {
+            return entity;
+        }
+        int position = source.indexOf(id);
+        return position < 0 ? null : putLocked(source.load(position));
+    }
+
+    private T putLocked(T entity) {
+        entities.put(entity.getId(), entity);
+        entitiesInOrder.put(entity.getId(), entity);
+        notifyListeners(ChangeType.CREATED, entity);
+        return entity;
+    }
+
+    private void removeLocked(Long id) {
+        entities.remove(id);
+        entitiesInOrder.remove(id);
+        if (lazy != null) {
+            lazyRemoved.add(id);
+        }
+    }
+
+    private static long parseId(String cursor) {
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Cursor no válido: " + cursor, e);
+        }
+    }
+
+    private void notifyListeners(ChangeType type, T entity) {
+        version++;
+        for (StoreListener<T> listener : listeners) {
+            listener.onChange(type, entity);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.example.restapidemo.store;
+
+import com.example.restapidemo.model.Identifiable;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Índice invertido para campos con varios valores: valor -> IDs que lo tienen
+ * Por ejemplo diagnóstico -> pacientes. Permite buscar las entidades que
+ * tienen todos los valores pedidos (intersección) o alguno (unión)
+ *
+ * Cada lista se guarda también ordenada, y esa copia solo se rehace la
+ * primera vez que se consulta después de un cambio. Así intersectar y unir
+ * son recorridos de arrays ordenados sin tocar las entidades
+ */
+public class InvertedIndex<T extends Identifiable> extends StoreIndex<T> {
+
+    private static final long[] NONE = new long[0];
+    private static final String[] NO_TERMS = new String[0];
+    // A partir de esta diferencia de tamaños se busca con búsqueda binaria en la lista grande
+    private static final int GALLOP_RATIO = 16;
+
+    private final Function<T, String[]> valuesExtractor;
+    private final Function<String, String> normalizer;
+    private final Map<String, Posting> postings = new HashMap<>();
+    private final Map<Long, String[]> terms = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param normalizer se aplica a cada valor al indexarlo y a cada valor buscado
+     */
+    public InvertedIndex(Function<T, String[]> valuesExtractor, Function<String, String> normalizer) {
+        this.valuesExtractor = valuesExtractor;
+        this.normalizer = normalizer;
+    }
+
+    @Override
+    public void onChange(ChangeType type, T entity) {
+        String[] current = type == ChangeType.DELETED ? NO_TERMS : normalize(Arrays.asList(orEmpty(valuesExtractor.apply(entity))));
+        long id = entity.getId();
+        lock.writeLock().lock();
+        try {
+            String[] previous = current.length == 0 ? terms.remove(id) : terms.put(id, current);
+            if (Arrays.equals(previous, current)) {
+                return;
+            }
+            if (previous != null) {
+                for (String term : previous) {
+                    Posting posting = postings.get(term);
+                    if (posting != null && posting.remove(id) && posting.ids.isEmpty()) {
+                        postings.remove(term);
+                    }
+                }
+            }
+            for (String term : current) {
+                postings.computeIfAbsent(term, k -> new Posting()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Devuelve, ordenados, los IDs que tienen todos los valores
+     */
+    public long[] findAll(Collection<String> values) {
+        long[][] lists = postingsOf(values);
+        if (lists.length == 0) {
+            return NONE;
+        }
+        // Se empieza por la lista más corta: el resultado nunca es mayor que ella
+        Arrays.sort(lists, Comparator.comparingInt(list -> list.length));
+        long[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Devuelve, ordenados, los IDs que tienen alguno de los valores
+     */
+    public long[] findAny(Collection<String> values) {
+        long[] result = NONE;
+        for (long[] list : postingsOf(values)) {
+            result = union(result, list);
+        }
+        return result;
+    }
+
+    /**
+     * Número de valores distintos indexados
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Número de entidades con algún valor
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Una lista por valor buscado; si falta alguno se devuelve una lista vacía en su lugar
+    private long[][] postingsOf(Collection<String> values) {
+        String[] wanted = normalize(values);
+        if (wanted.length == 0) {
+            return new long[0][];
+        }
+        awaitReady();
+        long[][] lists = new long[wanted.length][];
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < wanted.length; i++) {
+                Posting posting = postings.get(wanted[i]);
+                lists[i] = posting == null ? NONE : posting.sorted();
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return lists;
+    }
+
+    // Sin repetidos ni valores vacíos
+    private String[] normalize(Collection<String> values) {
+        Set<String> normalized = new LinkedHashSet<>();
+        for (String value : values) {
+            if (value != null && !value.isBlank()) {
+                normalized.add(normalizer.apply(value.strip()));
+            }
+        }
+        return normalized.toArray(NO_TERMS);
+    }
+
+    private static String[] orEmpty(String[] values) {
+        return values == null ? NO_TERMS : values;
+    }
+
+    static long[] intersect(long[] small, long[] large) {
+        long[] result = new long[Math.min(small.length, large.length)];
+        int count = 0;
+        if (large.length / GALLOP_RATIO > small.length) {
+            int from = 0;
+            for (long value : small) {
+                int found = Arrays.binarySearch(large, from, large.length, value);
+                if (found >= 0) {
+                    result[count++] = value;
+                    from = found + 1;
+                } else {
+                    from = -found - 1;
+                }
+                if (from == large.length) {
+                    break;
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < small.length && j < large.length) {
+                if (small[i] < large[j]) {
+                    i++;
+                } else if (small[i] > large[j]) {
+                    j++;
+                } else {
+                    result[count++] = small[i];
+                    i++;
+                    j++;
+                }
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    static long[] union(long[] a, long[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        long[] result = new long[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                result[count++] = a[i++];
+            } else if (a[i] > b[j]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i++];
+                j++;
+            }
+        }
+        while (i < a.length) {
+            result[count++] = a[i++];
+        }
+        while (j < b.length) {
+            result[count++] = b[j++];
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private static final class Posting {
+
+        private final LongHashSet ids = new LongHashSet(1);
+        // Copia ordenada de ids; null cuando ha cambiado desde la última consulta
+        private volatile long[] sorted;
+
+        // Con el cerrojo de escritura
+        private void add(long id) {
+            if (ids.add(id)) {
+                sorted = null;
+            }
+        }
+
+        private boolean remove(long id) {
+            if (ids.remove(id)) {
+                sorted = null;
+                return true;
+            }
+            return false;
+        }
+
+        // Con el cerrojo de lectura: varios lectores pueden rehacer la copia a
+        // la vez, pero todos obtienen el mismo resultado
+        private long[] sorted() {
+            long[] current = sorted;
+            if (current == null) {
+                current = ids.toSortedArray();
+                sorted = current;
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.restapidemo.store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Destino donde los almacenes anotan cada cambio para hacerlo duradero
+ * El almacén llama a append dentro de su sección de escritura (así el orden
+ * del registro es el mismo que el de la memoria) y espera el resultado
+ * fuera de ella, para que varias escrituras compartan el mismo fsync
+ */
+@FunctionalInterface
+public interface Journal {
+
+    // Journal que no guarda nada: los almacenes lo usan mientras no haya persistencia
+    Journal NONE = (store, type, data) -> CompletableFuture.completedFuture(null);
+
+    /**
+     * Anota un cambio
+     *
+     * @param store nombre del almacén
+     * @param type  tipo de cambio
+     * @param data  entidad completa tras el cambio (o la eliminada)
+     * @return se completa cuando el cambio está en disco
+     */
+    CompletableFuture<Void> append(String store, ChangeType type, Object data);
+
+    /**
+     * Falla si ya no se pueden anotar cambios (el journal se ha cerrado o ha
+     * fallado una escritura). Los almacenes lo comprueban antes de aplicar un
+     * cambio en memoria, para no mostrar cambios que no van a llegar a disco
+     */
+    default void checkWritable() {
+    }
+
+    /**
+     * Anota varios cambios seguidos del mismo almacén como una sola escritura
+     *
+     * @return se completa cuando todos los cambios están en disco
+     */
+    default CompletableFuture<Void> appendAll(String store, List<Entry> entries) {
+        return CompletableFuture.allOf(entries.stream()
+                .map(entry -> append(store, entry.type(), entry.data()))
+                .toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * Un cambio dentro de {@link #appendAll}
+     */
+    record Entry(ChangeType type, Object data) {
+    }
+
+    /**
+     * Espera a que un cambio anotado sea duradero
+     * Los errores de escritura se relanzan como excepciones no comprobadas
+     */
+    static void await(CompletableFuture<Void> pending) {
+        try {
+            pending.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw new UncheckedIOException(io);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.restapidemo.store;
+
+/**
+ * Entidades guardadas fuera de la memoria del almacén que se cargan bajo demanda
+ * Las posiciones van de 0 a size() - 1 en orden creciente de ID
+ */
+public interface LazySource<T> {
+
+    int size();
+
+    long idAt(int position);
+
+    /**
+     * Posición del ID o -1 si no está
+     */
+    int indexOf(long id);
+
+    /**
+     * Construye la entidad guardada en esa posición
+     */
+    T load(int position);
+}
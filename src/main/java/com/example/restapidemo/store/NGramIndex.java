@@ -0,0 +1,183 @@
+package com.example.restapidemo.store;
+
+import com.example.restapidemo.model.Identifiable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+
+/**
+ * Índice de trigramas para búsquedas "contiene" sin distinguir mayúsculas ni tildes
+ * Para cada secuencia de 3 caracteres guarda los IDs cuyo texto la contiene.
+ * Una búsqueda intersecta las listas de los trigramas del texto buscado y
+ * solo comprueba el texto completo de los candidatos que quedan
+ *
+ * El texto de cada entidad se normaliza con {@link TextNormalizer} una sola
+ * vez al indexarlo, así "perez" encuentra "Pérez" sin coste extra por búsqueda
+ */
+public class NGramIndex<T extends Identifiable> extends StoreIndex<T> {
+
+    private static final int N = 3;
+
+    private final Function<T, String> keyExtractor;
+    private final Map<String, LongHashSet> postings = new HashMap<>();
+    private final Map<Long, String> keys = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Recibe cuántos textos tuvo que comprobar cada búsqueda (para métricas)
+    private volatile IntConsumer candidateListener = candidates -> { };
+
+    public NGramIndex(Function<T, String> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+
+    @Override
+    public void onChange(ChangeType type, T entity) {
+        if (type == ChangeType.DELETED) {
+            remove(entity.getId());
+        } else {
+            put(entity.getId(), keyExtractor.apply(entity));
+        }
+    }
+
+    /**
+     * Avisa en cada búsqueda del número de candidatos que se han comprobado
+     */
+    public void setCandidateListener(IntConsumer candidateListener) {
+        this.candidateListener = candidateListener;
+    }
+
+    /**
+     * Devuelve, ordenados, los IDs cuyo texto contiene la consulta
+     */
+    public long[] search(String query) {
+        String key = TextNormalizer.fold(query);
+        awaitReady();
+        lock.readLock().lock();
+        try {
+            if (key.length() < N) {
+                return scan(key);
+            }
+            List<LongHashSet> lists = new ArrayList<>();
+            for (String gram : grams(key)) {
+                LongHashSet list = postings.get(gram);
+                if (list == null) {
+                    candidateListener.accept(0);
+                    return new long[0];
+                }
+                lists.add(list);
+            }
+            // Se recorre la lista más corta y se comprueba en las demás
+            lists.sort((a, b) -> Integer.compare(a.size(), b.size()));
+            LongHashSet shortest = lists.get(0);
+            candidateListener.accept(shortest.size());
+            LongHashSet matches = new LongHashSet(shortest.size());
+            shortest.forEach(id -> {
+                for (int i = 1; i < lists.size(); i++) {
+                    if (!lists.get(i).contains(id)) {
+                        return;
+                    }
+                }
+                // Los trigramas pueden coincidir sin que el texto sea consecutivo
+                if (keys.get(id).contains(key)) {
+                    matches.add(id);
+                }
+            });
+            return matches.toSortedArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Número de textos indexados. No espera a la carga inicial, igual que
+     * {@link InMemoryStore#size()}
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return keys.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Número de trigramas distintos
+     */
+    public int gramCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void put(long id, String text) {
+        String key = TextNormalizer.fold(text);
+        lock.writeLock().lock();
+        try {
+            String previous = keys.put(id, key);
+            if (key.equals(previous)) {
+                return;
+            }
+            if (previous != null) {
+                removeGrams(id, previous);
+            }
+            for (String gram : grams(key)) {
+                postings.computeIfAbsent(gram, g -> new LongHashSet()).add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            String previous = keys.remove(id);
+            if (previous != null) {
+                removeGrams(id, previous);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removeGrams(long id, String key) {
+        for (String gram : grams(key)) {
+            LongHashSet list = postings.get(gram);
+            if (list != null && list.remove(id) && list.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    // Consultas más cortas que un trigrama: se recorren las claves ya normalizadas
+    private long[] scan(String key) {
+        candidateListener.accept(keys.size());
+        LongHashSet matches = new LongHashSet();
+        keys.forEach((id, text) -> {
+            if (text.contains(key)) {
+                matches.add(id);
+            }
+        });
+        return matches.toSortedArray();
+    }
+
+    private static Set<String> grams(String key) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + N <= key.length(); i++) {
+            grams.add(key.substring(i, i + N));
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.restapidemo.store;
+
+import java.util.List;
+
+/**
+ * Una página de resultados de un almacén
+ * nextCursor es el valor a pasar como "after" para pedir la siguiente página,
+ * o null si ya no quedan más resultados
+ */
+public record Page<T>(List<T> items, String nextCursor) {
+}
@@ -0,0 +1,236 @@
+package com.example.restapidemo.store;
+
+import com.example.restapidemo.model.Identifiable;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Clasificación por una puntuación: de mayor a menor puntuación y, a igual
+ * puntuación, por ID
+ * Es un árbol (treap) en el que cada nodo sabe cuántos nodos tiene debajo, así
+ * que la posición de una entidad se calcula en O(log n) sin recorrer las
+ * anteriores, y las k primeras a partir de cualquier posición en O(log n + k)
+ *
+ * Se actualiza con cada cambio del almacén, sin reordenar nada
+ */
+public class RankIndex<T extends Identifiable> extends StoreIndex<T> {
+
+    private static final long[] NONE = new long[0];
+
+    private final ToIntFunction<T> score;
+    private final Map<Long, Integer> scores = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Solo se usa con el cerrojo de escritura
+    private final SplittableRandom random = new SplittableRandom(1);
+    private Node root;
+
+    public RankIndex(ToIntFunction<T> score) {
+        this.score = score;
+    }
+
+    @Override
+    public void onChange(ChangeType type, T entity) {
+        long id = entity.getId();
+        boolean deleted = type == ChangeType.DELETED;
+        int current = deleted ? 0 : score.applyAsInt(entity);
+        lock.writeLock().lock();
+        try {
+            Integer previous = deleted ? scores.remove(id) : scores.put(id, current);
+            if (previous != null) {
+                if (!deleted && previous == current) {
+                    return;
+                }
+                root = remove(root, previous, id);
+            }
+            if (!deleted) {
+                Node[] parts = split(root, current, id);
+                root = merge(merge(parts[0], new Node(current, id, random.nextInt())), parts[1]);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Puntuación y posición de la entidad, leídas a la vez, o null si no está
+     */
+    public Rank rankOf(long id) {
+        awaitReady();
+        lock.readLock().lock();
+        try {
+            Integer current = scores.get(id);
+            if (current == null) {
+                return null;
+            }
+            // Nodos que van antes: los de los subárboles izquierdos al bajar hacia la derecha
+            long before = 0;
+            Node node = root;
+            while (node != null) {
+                int cmp = compare(current, id, node);
+                if (cmp <= 0) {
+                    if (cmp == 0) {
+                        return new Rank(current, before + size(node.left) + 1, scores.size());
+                    }
+                    node = node.left;
+                } else {
+                    before += size(node.left) + 1;
+                    node = node.right;
+                }
+            }
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * IDs de las posiciones offset+1 a offset+limit, en orden
+     */
+    public long[] top(int offset, int limit) {
+        awaitReady();
+        lock.readLock().lock();
+        try {
+            int count = (int) Math.max(0, Math.min(limit, (long) size(root) - offset));
+            if (count == 0) {
+                return NONE;
+            }
+            // Pila con el camino hasta la posición offset; después es un recorrido en orden normal
+            Deque<Node> path = new ArrayDeque<>();
+            Node node = root;
+            int skip = offset;
+            while (node != null) {
+                int left = size(node.left);
+                if (skip < left) {
+                    path.push(node);
+                    node = node.left;
+                } else if (skip == left) {
+                    path.push(node);
+                    break;
+                } else {
+                    skip -= left + 1;
+                    node = node.right;
+                }
+            }
+            long[] ids = new long[count];
+            int i = 0;
+            while (i < count && !path.isEmpty()) {
+                Node next = path.pop();
+                ids[i++] = next.id;
+                for (Node child = next.right; child != null; child = child.left) {
+                    path.push(child);
+                }
+            }
+            return i == count ? ids : Arrays.copyOf(ids, i);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return scores.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Negativo si (score, id) va antes que el nodo
+    private static int compare(int score, long id, Node node) {
+        int byScore = Integer.compare(node.score, score);
+        return byScore != 0 ? byScore : Long.compare(id, node.id);
+    }
+
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    // Separa el árbol en los nodos que van antes de (score, id) y el resto
+    private static Node[] split(Node node, int score, long id) {
+        if (node == null) {
+            return new Node[2];
+        }
+        if (compare(score, id, node) > 0) {
+            Node[] parts = split(node.right, score, id);
+            node.right = parts[0];
+            node.update();
+            parts[0] = node;
+            return parts;
+        }
+        Node[] parts = split(node.left, score, id);
+        node.left = parts[1];
+        node.update();
+        parts[1] = node;
+        return parts;
+    }
+
+    // Todos los nodos de first van antes que los de second
+    private static Node merge(Node first, Node second) {
+        if (first == null) {
+            return second;
+        }
+        if (second == null) {
+            return first;
+        }
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            first.update();
+            return first;
+        }
+        second.left = merge(first, second.left);
+        second.update();
+        return second;
+    }
+
+    private static Node remove(Node node, int score, long id) {
+        if (node == null) {
+            return null;
+        }
+        int cmp = compare(score, id, node);
+        if (cmp == 0) {
+            return merge(node.left, node.right);
+        }
+        if (cmp < 0) {
+            node.left = remove(node.left, score, id);
+        } else {
+            node.right = remove(node.right, score, id);
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * @param position empieza en 1
+     * @param total    entidades en la clasificación
+     */
+    public record Rank(int score, long position, int total) {
+    }
+
+    private static final class Node {
+
+        private final int score;
+        private final long id;
+        private final int priority;
+        private int size = 1;
+        private Node left;
+        private Node right;
+
+        private Node(int score, long id, int priority) {
+            this.score = score;
+            this.id = id;
+            this.priority = priority;
+        }
+
+        private void update() {
+            size = 1 + RankIndex.size(left) + RankIndex.size(right);
+        }
+    }
+}
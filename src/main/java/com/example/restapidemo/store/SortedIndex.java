@@ -0,0 +1,171 @@
+package com.example.restapidemo.store;
+
+import com.example.restapidemo.model.Identifiable;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+import java.util.function.LongFunction;
+
+/**
+ * Índice ordenado por un campo, para paginar por cursor ("keyset")
+ * Las entradas (valor del campo, ID) se guardan en una skip list concurrente,
+ * así pedir la página siguiente a un cursor cuesta O(log n + tamaño de página)
+ * y no depende de cuántas páginas se hayan leído antes
+ *
+ * El cursor contiene el valor y el ID del último elemento devuelto, por lo
+ * que sigue siendo válido aunque ese elemento se borre entre dos peticiones
+ *
+ * También sirve para buscar por rango de valores: los extremos se localizan
+ * en O(log n) y solo se recorren las entradas que caen dentro
+ */
+public class SortedIndex<T extends Identifiable, K extends Comparable<K>> extends StoreIndex<T> {
+
+    private static final char SEPARATOR = '\u0000';
+    // Marca de las entidades sin valor en el campo dentro del cursor
+    private static final String NULL_KEY = "\u0001";
+
+    private final Function<T, K> keyExtractor;
+    private final Function<String, K> keyParser;
+    private final ConcurrentSkipListSet<Entry<K>> entries = new ConcurrentSkipListSet<>();
+    private final ConcurrentHashMap<Long, Entry<K>> entriesById = new ConcurrentHashMap<>();
+
+    /**
+     * @param keyExtractor obtiene el valor del campo de una entidad
+     * @param keyParser    reconstruye el valor a partir del texto guardado en el cursor
+     */
+    public SortedIndex(Function<T, K> keyExtractor, Function<String, K> keyParser) {
+        this.keyExtractor = keyExtractor;
+        this.keyParser = keyParser;
+    }
+
+    @Override
+    public void onChange(ChangeType type, T entity) {
+        if (type == ChangeType.DELETED) {
+            Entry<K> previous = entriesById.remove(entity.getId());
+            if (previous != null) {
+                entries.remove(previous);
+            }
+            return;
+        }
+        Entry<K> entry = new Entry<>(keyExtractor.apply(entity), entity.getId());
+        Entry<K> previous = entriesById.put(entity.getId(), entry);
+        if (entry.equals(previous)) {
+            return;
+        }
+        // Se añade antes de quitar la anterior para que un lector nunca deje de ver la entidad
+        entries.add(entry);
+        if (previous != null) {
+            entries.remove(previous);
+        }
+    }
+
+    /**
+     * Devuelve hasta limit entidades a continuación del cursor
+     *
+     * @param after      cursor de la página anterior o null para empezar
+     * @param limit      tamaño máximo de la página, null para devolver todo
+     * @param descending recorrer de mayor a menor
+     * @param lookup     obtiene la entidad de un ID
+     * @throws IllegalArgumentException si el cursor no es válido
+     */
+    public Page<T> page(String after, Integer limit, boolean descending, LongFunction<T> lookup) {
+        return range(null, null, after, limit, descending, lookup);
+    }
+
+    /**
+     * Como {@link #page}, pero solo con las entidades cuyo valor está entre from y to (ambos incluidos)
+     * Con algún extremo, las entidades sin valor quedan fuera
+     *
+     * @param from texto del valor mínimo (se interpreta como los cursores) o null para no limitar
+     * @param to   texto del valor máximo o null para no limitar
+     * @throws IllegalArgumentException si un extremo o el cursor no son válidos
+     */
+    public Page<T> range(String from, String to, String after, Integer limit, boolean descending,
+                         LongFunction<T> lookup) {
+        awaitReady();
+        NavigableSet<Entry<K>> view = entries;
+        if (from != null) {
+            view = view.tailSet(new Entry<>(parseKey(from), Long.MIN_VALUE), true);
+        } else if (to != null) {
+            // Las claves null van antes que todas las demás
+            view = view.tailSet(new Entry<>(null, Long.MAX_VALUE), false);
+        }
+        if (to != null) {
+            view = view.headSet(new Entry<>(parseKey(to), Long.MAX_VALUE), true);
+        }
+        if (descending) {
+            view = view.descendingSet();
+        }
+        if (after != null) {
+            view = view.tailSet(decode(after), false);
+        }
+        int max = limit == null ? Integer.MAX_VALUE : limit;
+        List<T> items = new ArrayList<>(Math.min(max, 64));
+        Entry<K> last = null;
+        for (Entry<K> entry : view) {
+            if (items.size() == max) {
+                return new Page<>(items, encode(last));
+            }
+            T entity = lookup.apply(entry.id());
+            if (entity != null) {
+                items.add(entity);
+                last = entry;
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    public int size() {
+        awaitReady();
+        return entriesById.size();
+    }
+
+    private String encode(Entry<K> entry) {
+        String raw = (entry.key() == null ? NULL_KEY : entry.key().toString()) + SEPARATOR + entry.id();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private K parseKey(String text) {
+        try {
+            return keyParser.apply(text);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Valor no válido: " + text, e);
+        }
+    }
+
+    private Entry<K> decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(SEPARATOR);
+            if (separator < 0) {
+                throw new IllegalArgumentException("Cursor no válido: " + cursor);
+            }
+            String text = raw.substring(0, separator);
+            K key = text.equals(NULL_KEY) ? null : keyParser.apply(text);
+            return new Entry<>(key, Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            // Incluye NumberFormatException y los errores de Base64
+            throw new IllegalArgumentException("Cursor no válido: " + cursor, e);
+        }
+    }
+
+    private record Entry<K extends Comparable<K>>(K key, long id) implements Comparable<Entry<K>> {
+
+        @Override
+        public int compareTo(Entry<K> other) {
+            int byKey;
+            if (key == null || other.key == null) {
+                byKey = key == other.key ? 0 : (key == null ? -1 : 1);
+            } else {
+                byKey = key.compareTo(other.key);
+            }
+            return byKey != 0 ? byKey : Long.compare(id, other.id);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.restapidemo.store;
+
+/**
+ * Base de los índices secundarios que se mantienen desde un almacén
+ * Mientras el almacén termina de cargar su copia en disco, el índice aún no
+ * está completo: las consultas esperan con {@link #awaitReady()} a que lo esté
+ */
+public abstract class StoreIndex<T> implements StoreListener<T> {
+
+    private volatile Runnable readBarrier = () -> { };
+
+    /**
+     * Lo llama el almacén al registrar el índice
+     */
+    void bindReadBarrier(Runnable readBarrier) {
+        this.readBarrier = readBarrier;
+    }
+
+    /**
+     * Espera a que el almacén haya pasado al índice todas sus entidades
+     */
+    protected void awaitReady() {
+        readBarrier.run();
+    }
+}
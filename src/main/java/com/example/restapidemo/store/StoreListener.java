@@ -0,0 +1,14 @@
+package com.example.restapidemo.store;
+
+/**
+ * Recibe los cambios de un almacén en memoria
+ * Se usa para mantener índices secundarios al día sin que los controladores
+ * tengan que acordarse de actualizarlos
+ *
+ * Se llama dentro de la sección de escritura del almacén, así que debe ser rápido
+ */
+@FunctionalInterface
+public interface StoreListener<T> {
+
+    void onChange(ChangeType type, T entity);
+}
@@ -0,0 +1,12 @@
+package com.example.restapidemo.store;
+
+import java.util.List;
+
+/**
+ * Copia consistente del contenido de un almacén en un instante
+ *
+ * @param nextId   siguiente ID que asignará el almacén
+ * @param entities entidades existentes en ese instante
+ */
+public record StoreSnapshot<T>(long nextId, List<T> entities) {
+}
@@ -0,0 +1,54 @@
+package com.example.restapidemo.store;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Normaliza textos para compararlos sin tener en cuenta mayúsculas ni tildes
+ * Ejemplo: "José Pérez" y "JOSE PEREZ" dan la misma clave "jose perez"
+ *
+ * Es relativamente caro, por eso los índices lo aplican una vez al guardar
+ * cada entidad y no en cada búsqueda
+ */
+public final class TextNormalizer {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Quita tildes, diéresis y demás marcas y pasa el texto a minúsculas
+     */
+    public static String fold(String text) {
+        if (text == null) {
+            return "";
+        }
+        if (isAscii(text)) {
+            return text.toLowerCase(Locale.ROOT);
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return DIACRITICS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Solo quita espacios de los extremos y pasa a minúsculas, sin tocar las tildes
+     * Para claves como el email, donde dos textos con distinta tilde son distintos
+     */
+    public static String foldCase(String text) {
+        if (text == null) {
+            return "";
+        }
+        return text.strip().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
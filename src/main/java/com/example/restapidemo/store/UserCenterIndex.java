@@ -0,0 +1,332 @@
+package com.example.restapidemo.store;
+
+import com.example.restapidemo.model.UserCenter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Índice bidireccional de las asignaciones entre usuarios y centros
+ * Guarda para cada usuario el conjunto de sus centros y para cada centro el
+ * conjunto de sus usuarios, así las consultas cuestan lo que tenga la
+ * relación buscada y no el total de asignaciones. Los usuarios se guardan
+ * ordenados para poder paginar por cursor (idUsuario, idCentro)
+ *
+ * Las lecturas pueden ir en paralelo; las escrituras son exclusivas y se
+ * anotan en el {@link Journal} en el mismo orden en el que se aplican
+ *
+ * Cada asignación lleva además su versión de modificación ({@link VersionLog}),
+ * con lápidas para las eliminadas, para la sincronización por cambios
+ */
+public class UserCenterIndex {
+
+    public static final String NAME = "usersCenters";
+
+    private final NavigableMap<Long, LongHashSet> centersByUser = new TreeMap<>();
+    private final Map<Long, LongHashSet> usersByCenter = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private int size;
+    private boolean pristine = true;
+    private volatile Journal journal = Journal.NONE;
+    private final VersionLog<UserCenter, UserCenter> versions;
+
+    public UserCenterIndex() {
+        this(VersionLog.DEFAULT_MAX_TOMBSTONES);
+    }
+
+    /**
+     * @param maxTombstones asignaciones eliminadas que se recuerdan para la sincronización
+     */
+    public UserCenterIndex(int maxTombstones) {
+        this.versions = new VersionLog<>(maxTombstones);
+    }
+
+    /**
+     * Indica dónde anotar los cambios para que sobrevivan a un reinicio
+     */
+    public void setJournal(Journal journal) {
+        this.journal = journal;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * true si nunca se ha añadido ninguna asignación, ni en esta ejecución
+     * ni en las recuperadas del disco
+     */
+    public boolean isPristine() {
+        lock.readLock().lock();
+        try {
+            return pristine;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Añade la asignación si no existía
+     * Devuelve true si se ha añadido
+     */
+    public boolean add(long idUsuario, long idCentro) {
+        journal.checkWritable();
+        CompletableFuture<Void> durable;
+        lock.writeLock().lock();
+        try {
+            if (!addInternal(idUsuario, idCentro)) {
+                return false;
+            }
+            durable = journal.append(NAME, ChangeType.CREATED, new UserCenter(idUsuario, idCentro));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Journal.await(durable);
+        return true;
+    }
+
+    /**
+     * Elimina la asignación
+     * Devuelve true si existía
+     */
+    public boolean remove(long idUsuario, long idCentro) {
+        journal.checkWritable();
+        CompletableFuture<Void> durable;
+        lock.writeLock().lock();
+        try {
+            if (!removeInternal(idUsuario, idCentro)) {
+                return false;
+            }
+            durable = journal.append(NAME, ChangeType.DELETED, new UserCenter(idUsuario, idCentro));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        Journal.await(durable);
+        return true;
+    }
+
+    /**
+     * Elimina todas las asignaciones de un usuario
+     * Devuelve cuántas se han eliminado
+     */
+    public int removeUser(long idUsuario) {
+        journal.checkWritable();
+        LongHashSet centers;
+        CompletableFuture<Void> durable = null;
+        lock.writeLock().lock();
+        try {
+            centers = centersByUser.remove(idUsuario);
+            if (centers == null) {
+                return 0;
+            }
+            for (long idCentro : centers.toSortedArray()) {
+                removeFrom(usersByCenter, idCentro, idUsuario);
+                versions.record(new UserCenter(idUsuario, idCentro), null);
+                durable = journal.append(NAME, ChangeType.DELETED, new UserCenter(idUsuario, idCentro));
+            }
+            size -= centers.size();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        // El journal escribe en orden: cuando el último es duradero, también lo son los anteriores
+        Journal.await(durable);
+        return centers.size();
+    }
+
+    public boolean contains(long idUsuario, long idCentro) {
+        lock.readLock().lock();
+        try {
+            LongHashSet centers = centersByUser.get(idUsuario);
+            return centers != null && centers.contains(idCentro);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * IDs de los centros asignados al usuario, ordenados
+     */
+    public long[] centersOf(long idUsuario) {
+        return sortedValues(centersByUser, idUsuario);
+    }
+
+    /**
+     * IDs de los usuarios asignados al centro, ordenados
+     */
+    public long[] usersOf(long idCentro) {
+        return sortedValues(usersByCenter, idCentro);
+    }
+
+    /**
+     * Todas las asignaciones, ordenadas por usuario y después por centro
+     */
+    public List<UserCenter> findAll() {
+        return findPage(null, null).items();
+    }
+
+    /**
+     * Devuelve una página de asignaciones ordenadas por usuario y centro
+     *
+     * @param after cursor "idUsuario,idCentro" de la última asignación recibida, o null
+     * @param limit tamaño máximo de la página, o null para devolver todo
+     * @throws IllegalArgumentException si el cursor o el límite no son válidos
+     */
+    public Page<UserCenter> findPage(String after, Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("El límite debe ser mayor que 0");
+        }
+        long[] cursor = after == null ? null : parseCursor(after);
+        int max = limit == null ? Integer.MAX_VALUE : limit;
+
+        lock.readLock().lock();
+        try {
+            NavigableMap<Long, LongHashSet> view = cursor == null ? centersByUser : centersByUser.tailMap(cursor[0], true);
+            List<UserCenter> items = new ArrayList<>(Math.min(max, Math.max(size, 1)));
+            for (Map.Entry<Long, LongHashSet> entry : view.entrySet()) {
+                long idUsuario = entry.getKey();
+                long[] centers = entry.getValue().toSortedArray();
+                int from = 0;
+                if (cursor != null && idUsuario == cursor[0]) {
+                    // Primer centro estrictamente posterior al del cursor
+                    int position = Arrays.binarySearch(centers, cursor[1]);
+                    from = position >= 0 ? position + 1 : -position - 1;
+                }
+                for (int i = from; i < centers.length; i++) {
+                    if (items.size() == max) {
+                        UserCenter last = items.get(items.size() - 1);
+                        return new Page<>(items, last.getIdUsuario() + "," + last.getIdCentro());
+                    }
+                    items.add(new UserCenter(idUsuario, centers[i]));
+                }
+            }
+            return new Page<>(items, null);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Asignaciones añadidas o eliminadas después de una versión (ver {@link VersionLog#since})
+     */
+    public VersionLog.Slice<UserCenter, UserCenter> changesSince(long since, Integer limit) {
+        return versions.since(since, limit);
+    }
+
+    /**
+     * Versión del último cambio de cualquier asignación
+     */
+    public long version() {
+        return versions.version();
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Operaciones usadas al recuperar el estado desde disco: no se vuelven a anotar
+
+    /**
+     * Marca que hay estado guardado aunque no quede ninguna asignación
+     */
+    public void markRestored() {
+        lock.writeLock().lock();
+        try {
+            pristine = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void restoreAdd(long idUsuario, long idCentro) {
+        lock.writeLock().lock();
+        try {
+            addInternal(idUsuario, idCentro);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void restoreRemove(long idUsuario, long idCentro) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(idUsuario, idCentro);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Copia consistente de todas las asignaciones
+     */
+    public List<UserCenter> snapshot() {
+        return findAll();
+    }
+
+    private boolean addInternal(long idUsuario, long idCentro) {
+        pristine = false;
+        if (!centersByUser.computeIfAbsent(idUsuario, k -> new LongHashSet()).add(idCentro)) {
+            return false;
+        }
+        usersByCenter.computeIfAbsent(idCentro, k -> new LongHashSet()).add(idUsuario);
+        size++;
+        UserCenter assignment = new UserCenter(idUsuario, idCentro);
+        versions.record(assignment, assignment);
+        return true;
+    }
+
+    private boolean removeInternal(long idUsuario, long idCentro) {
+        if (!removeFrom(centersByUser, idUsuario, idCentro)) {
+            return false;
+        }
+        removeFrom(usersByCenter, idCentro, idUsuario);
+        size--;
+        versions.record(new UserCenter(idUsuario, idCentro), null);
+        return true;
+    }
+
+    private long[] sortedValues(Map<Long, LongHashSet> map, long key) {
+        lock.readLock().lock();
+        try {
+            LongHashSet values = map.get(key);
+            return values == null ? new long[0] : values.toSortedArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static long[] parseCursor(String cursor) {
+        String[] parts = cursor.split(",");
+        try {
+            if (parts.length == 2) {
+                return new long[] {Long.parseLong(parts[0].trim()), Long.parseLong(parts[1].trim())};
+            }
+        } catch (NumberFormatException e) {
+            // Se informa abajo con el mismo mensaje
+        }
+        throw new IllegalArgumentException("Cursor no válido: " + cursor);
+    }
+
+    private static boolean removeFrom(Map<Long, LongHashSet> map, long key, long value) {
+        LongHashSet values = map.get(key);
+        if (values == null || !values.remove(value)) {
+            return false;
+        }
+        if (values.isEmpty()) {
+            map.remove(key);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.restapidemo.store;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Versión de la última modificación de cada registro, ordenada por versión
+ * Cada cambio recibe una versión mayor que todas las anteriores y sustituye
+ * a la entrada anterior del mismo registro; una baja deja una marca (lápida)
+ * sin valor. Así "qué ha cambiado desde la versión N" es recorrer el mapa a
+ * partir de N, y cuesta lo que haya cambiado y no lo que haya guardado
+ *
+ * Las versiones no se guardan en disco: al arrancar se empieza desde un valor
+ * basado en la hora, mayor que las versiones de la ejecución anterior, y las
+ * consultas desde una versión anterior al arranque (o a la lápida más antigua
+ * que se conserva) se responden con todo y la marca de reinicio
+ */
+public class VersionLog<K, V> {
+
+    public static final int DEFAULT_MAX_TOMBSTONES = 100_000;
+
+    private final Map<K, Change<K, V>> latest = new HashMap<>();
+    private final NavigableMap<Long, Change<K, V>> byVersion = new TreeMap<>();
+    // Versión -> registro de cada lápida, para descartar primero las más antiguas
+    private final NavigableMap<Long, K> tombstones = new TreeMap<>();
+    private final int maxTombstones;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Última versión asignada
+    private long version;
+    // Desde esta versión se conocen todos los cambios, bajas incluidas
+    private long horizon;
+
+    /**
+     * @param maxTombstones lápidas que se conservan; al pasar de ahí se descartan las más antiguas
+     */
+    public VersionLog(int maxTombstones) {
+        this(startVersion(), maxTombstones);
+    }
+
+    VersionLog(long start, int maxTombstones) {
+        this.version = start;
+        this.horizon = start;
+        this.maxTombstones = maxTombstones;
+    }
+
+    /**
+     * Versión inicial de esta ejecución: milisegundos desde 1970 por mil
+     * Mientras se hagan menos de mil cambios por milisegundo en la ejecución
+     * anterior, empieza por encima de todas sus versiones, y sigue siendo un
+     * número exacto en JavaScript
+     */
+    public static long startVersion() {
+        return System.currentTimeMillis() * 1000;
+    }
+
+    /**
+     * Anota un cambio del registro
+     *
+     * @param value estado tras el cambio, o null si se ha eliminado
+     * @return la versión asignada
+     */
+    public long record(K key, V value) {
+        lock.writeLock().lock();
+        try {
+            Change<K, V> change = new Change<>(++version, key, value);
+            Change<K, V> previous = latest.put(key, change);
+            if (previous != null) {
+                byVersion.remove(previous.version());
+                if (previous.value() == null) {
+                    tombstones.remove(previous.version());
+                }
+            }
+            byVersion.put(change.version(), change);
+            if (value == null) {
+                tombstones.put(change.version(), key);
+                if (tombstones.size() > maxTombstones) {
+                    Map.Entry<Long, K> oldest = tombstones.pollFirstEntry();
+                    latest.remove(oldest.getValue());
+                    byVersion.remove(oldest.getKey());
+                    horizon = Math.max(horizon, oldest.getKey());
+                }
+            }
+            return change.version();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Versión del último cambio del registro (también si fue una baja), o 0 si no se conoce
+     */
+    public long versionOf(K key) {
+        lock.readLock().lock();
+        try {
+            Change<K, V> change = latest.get(key);
+            return change == null ? 0 : change.version();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Versión del último cambio de todos los registros
+     */
+    public long version() {
+        lock.readLock().lock();
+        try {
+            return version;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Cambios posteriores a una versión, en orden
+     * Si no se conocen todas las bajas desde esa versión (o es de otra
+     * ejecución), la respuesta es un reinicio: todos los registros que
+     * existen, sin lápidas, y el cliente debe descartar lo que tenga
+     *
+     * @param since última versión que tiene el cliente
+     * @param limit número máximo de cambios, o null para devolver todos
+     */
+    public Slice<K, V> since(long since, Integer limit) {
+        int max = limit == null ? Integer.MAX_VALUE : limit;
+        lock.readLock().lock();
+        try {
+            boolean reset = since < horizon || since > version;
+            Iterator<Change<K, V>> changes = (reset ? byVersion : byVersion.tailMap(since, false)).values().iterator();
+            List<Change<K, V>> found = new ArrayList<>(Math.min(max, 64));
+            while (changes.hasNext()) {
+                Change<K, V> change = changes.next();
+                if (reset && change.value() == null) {
+                    continue;
+                }
+                if (found.size() == max) {
+                    return new Slice<>(found, found.get(found.size() - 1).version(), reset, true);
+                }
+                found.add(change);
+            }
+            return new Slice<>(found, version, reset, false);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registros con versión, lápidas incluidas
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return latest.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int tombstoneCount() {
+        lock.readLock().lock();
+        try {
+            return tombstones.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Último cambio de un registro
+     *
+     * @param value null si es una baja
+     */
+    public record Change<K, V>(long version, K key, V value) {
+    }
+
+    /**
+     * Resultado de {@link #since}
+     *
+     * @param version versión desde la que pedir los siguientes cambios
+     * @param reset   el cliente debe descartar sus datos y quedarse con estos
+     * @param more    hay más cambios después de version
+     */
+    public record Slice<K, V>(List<Change<K, V>> changes, long version, boolean reset, boolean more) {
+    }
+}
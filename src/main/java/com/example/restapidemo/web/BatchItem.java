@@ -0,0 +1,29 @@
+package com.example.restapidemo.web;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Una operación de un endpoint /batch
+ * Ejemplos:
+ * { "op": "create", "data": { ... } }
+ * { "op": "update", "id": 3, "data": { ... } }
+ * { "op": "delete", "id": 4 }
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class BatchItem<T> {
+
+    public enum Op {
+        @JsonProperty("create") CREATE,
+        @JsonProperty("update") UPDATE,
+        @JsonProperty("delete") DELETE
+    }
+
+    private Op op;
+    private Long id;
+    private T data;
+}
@@ -0,0 +1,15 @@
+package com.example.restapidemo.web;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Resultado de una operación de un endpoint /batch, en la misma posición que la operación
+ *
+ * @param status código HTTP que habría devuelto la operación por separado
+ * @param id     ID de la entidad (el asignado, en las altas)
+ * @param data   entidad tras la operación (no se incluye al eliminar)
+ * @param error  motivo si la operación no se ha aplicado
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record BatchItemResult<T>(int status, Long id, T data, String error) {
+}
@@ -0,0 +1,110 @@
+package com.example.restapidemo.web;
+
+import com.example.restapidemo.model.Identifiable;
+import com.example.restapidemo.store.BatchOperation;
+import com.example.restapidemo.store.BatchResult;
+import com.example.restapidemo.store.ChangeType;
+import com.example.restapidemo.store.InMemoryStore;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Aplica los endpoints /batch sobre un almacén
+ * Las operaciones válidas se aplican todas juntas con {@link InMemoryStore#applyBatch}
+ * y cada una recibe su propio resultado: que una falle no impide las demás
+ *
+ * Los endpoints reciben un array y no un List: con List&lt;BatchItem&lt;X&gt;&gt; Spring
+ * pierde el tipo X al leer el cuerpo y los datos llegarían como mapas
+ */
+public final class BatchRequests {
+
+    // Operaciones máximas por petición, para no retener el almacén demasiado tiempo
+    public static final int MAX_ITEMS = 10_000;
+
+    private BatchRequests() {
+    }
+
+    /**
+     * @param merge copia en la entidad guardada (primer argumento) los campos
+     *              actualizables de la recibida (segundo), igual que el PUT
+     * @return 200 con un resultado por operación, 400 si no hay operaciones o
+     *         413 si hay más de {@link #MAX_ITEMS}
+     */
+    public static <T extends Identifiable> ResponseEntity<List<BatchItemResult<T>>> apply(
+            InMemoryStore<T> store, BatchItem<T>[] batch, BiConsumer<T, T> merge) {
+        return apply(store, batch, merge, new BitSet());
+    }
+
+    /**
+     * Igual que {@link #apply(InMemoryStore, BatchItem[], BiConsumer)}, pero las
+     * operaciones en las posiciones de busy no se aplican y reciben un 503 (por
+     * ejemplo, porque no ha habido sitio para cifrar su contraseña)
+     */
+    public static <T extends Identifiable> ResponseEntity<List<BatchItemResult<T>>> apply(
+            InMemoryStore<T> store, BatchItem<T>[] batch, BiConsumer<T, T> merge, BitSet busy) {
+        List<BatchItem<T>> items = batch == null ? List.of() : Arrays.asList(batch);
+        if (items.isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (items.size() > MAX_ITEMS) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        BatchItemResult<T>[] results = new BatchItemResult[items.size()];
+        List<BatchOperation<T>> operations = new ArrayList<>(items.size());
+        int[] positions = new int[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            BatchItem<T> item = items.get(i);
+            String error = validate(item);
+            if (error != null) {
+                results[i] = new BatchItemResult<>(HttpStatus.BAD_REQUEST.value(), item == null ? null : item.getId(), null, error);
+                continue;
+            }
+            if (busy.get(i)) {
+                results[i] = new BatchItemResult<>(HttpStatus.SERVICE_UNAVAILABLE.value(), item.getId(), null,
+                        "Servidor ocupado, hay que reintentar");
+                continue;
+            }
+            positions[operations.size()] = i;
+            operations.add(switch (item.getOp()) {
+                case CREATE -> BatchOperation.create(item.getData());
+                case UPDATE -> BatchOperation.update(item.getId(), entity -> merge.accept(entity, item.getData()));
+                case DELETE -> BatchOperation.delete(item.getId());
+            });
+        }
+
+        List<BatchResult<T>> applied = store.applyBatch(operations);
+        for (int j = 0; j < applied.size(); j++) {
+            BatchResult<T> result = applied.get(j);
+            Long id = operations.get(j).type() == ChangeType.CREATED ? result.entity().getId() : operations.get(j).id();
+            results[positions[j]] = !result.found()
+                    ? new BatchItemResult<>(HttpStatus.NOT_FOUND.value(), id, null, "No existe")
+                    : switch (result.type()) {
+                        case CREATED -> new BatchItemResult<>(HttpStatus.CREATED.value(), id, result.entity(), null);
+                        case UPDATED -> new BatchItemResult<>(HttpStatus.OK.value(), id, result.entity(), null);
+                        case DELETED -> new BatchItemResult<>(HttpStatus.NO_CONTENT.value(), id, null, null);
+                    };
+        }
+        return ResponseEntity.ok(Arrays.asList(results));
+    }
+
+    private static String validate(BatchItem<?> item) {
+        if (item == null || item.getOp() == null) {
+            return "Falta op (create, update o delete)";
+        }
+        if (item.getOp() != BatchItem.Op.CREATE && item.getId() == null) {
+            return "Falta id";
+        }
+        if (item.getOp() != BatchItem.Op.DELETE && item.getData() == null) {
+            return "Falta data";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,433 @@
+package com.example.restapidemo.web;
+
+import com.example.restapidemo.store.ChangeType;
+import com.example.restapidemo.store.Journal;
+import com.example.restapidemo.store.VersionLog;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Canal de cambios de todos los almacenes, para enviarlos por Server-Sent Events
+ * Los cambios se recogen en el {@link Journal} de cada almacén, por donde pasan
+ * todas las altas, actualizaciones y bajas (y no lo que se recupera del disco),
+ * en el mismo orden en el que se aplican. Dentro de la sección de escritura
+ * del almacén solo se reserva el número de secuencia; el cambio se serializa
+ * en el hilo de publicación cuando el journal confirma que está en disco, así
+ * que nunca se envía un cambio que se pierde al caerse el servidor. Si la
+ * entidad vuelve a cambiar mientras tanto, el evento puede llevar ya el estado
+ * nuevo, que llega también en el evento siguiente
+ *
+ * Los cambios publicados se guardan en un buffer circular con los últimos,
+ * para que un cliente que se reconecta (Last-Event-ID) reciba lo que se perdió.
+ * Sin suscriptores (pasado app.changes.resume-seconds desde que se fue el
+ * último) no se serializa ni se guarda nada. La secuencia empieza, como en
+ * {@link VersionLog}, en un valor basado en la hora: un Last-Event-ID de antes
+ * de reiniciar queda por debajo del buffer y recibe "reset", igual que uno
+ * mayor que el último cambio enviado
+ *
+ * Cada suscriptor tiene su propia cola limitada y un hilo del pool de envío la
+ * vacía hacia el cliente. Si un cliente lee tan despacio que su cola se llena,
+ * se le desconecta: al reconectar retoma desde su último cambio mientras siga
+ * en el buffer y lo que falta quepa en su cola, y si no, recibe un evento
+ * "reset" para que recargue los datos
+ */
+@Component
+public class ChangeFeed {
+
+    private static final Logger log = LoggerFactory.getLogger(ChangeFeed.class);
+
+    // Marca en la cola de un suscriptor para enviar un comentario y detectar conexiones cerradas
+    private static final Event HEARTBEAT = new Event(0, null, null, null);
+
+    private final ObjectMapper mapper;
+    private final long timeoutMillis;
+    private final int subscriberQueueSize;
+    private final long resumeNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Buffer circular: el cambio con secuencia s está en la posición s % tamaño (protegido por lock)
+    private final Event[] recent;
+    private final long firstSeq = VersionLog.startVersion() + 1;
+    // Protegidos por lock: siguiente secuencia a reservar, última publicada (en
+    // orden) y primera desde la que el buffer no tiene huecos
+    private long nextSeq = firstSeq;
+    private long published = firstSeq - 1;
+    private long horizon = firstSeq;
+    // Cambios con secuencia reservada, en orden, a la espera del journal (protegido por lock)
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    // Hasta cuándo se siguen guardando cambios sin suscriptores (System.nanoTime)
+    private volatile long keepUntil = System.nanoTime();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ExecutorService publisher;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeats;
+
+    public ChangeFeed(
+            ObjectMapper mapper,
+            @Value("${app.changes.buffer-size:4096}") int bufferSize,
+            @Value("${app.changes.subscriber-queue:256}") int subscriberQueueSize,
+            @Value("${app.changes.sender-threads:4}") int senderThreads,
+            @Value("${app.changes.timeout-minutes:30}") long timeoutMinutes,
+            @Value("${app.changes.heartbeat-seconds:15}") long heartbeatSeconds,
+            @Value("${app.changes.resume-seconds:60}") long resumeSeconds) {
+        this.mapper = mapper;
+        this.recent = new Event[bufferSize];
+        this.subscriberQueueSize = subscriberQueueSize;
+        this.timeoutMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes);
+        this.resumeNanos = TimeUnit.SECONDS.toNanos(resumeSeconds);
+        this.publisher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-feed-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger counter = new AtomicInteger();
+        this.senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "change-feed-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "change-feed-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeats.scheduleAtFixedRate(() -> subscribers.forEach(subscriber -> subscriber.offer(HEARTBEAT)),
+                heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Journal que pasa cada cambio al journal original y lo publica en el canal
+     * cuando este confirma que es duradero
+     */
+    public Journal wrap(Journal journal) {
+        return new Journal() {
+            @Override
+            public CompletableFuture<Void> append(String store, ChangeType type, Object data) {
+                CompletableFuture<Void> durable = journal.append(store, type, data);
+                track(store, List.of(new Entry(type, data)), durable);
+                return durable;
+            }
+
+            @Override
+            public CompletableFuture<Void> appendAll(String store, List<Entry> entries) {
+                CompletableFuture<Void> durable = journal.appendAll(store, entries);
+                track(store, entries, durable);
+                return durable;
+            }
+
+            @Override
+            public void checkWritable() {
+                journal.checkWritable();
+            }
+        };
+    }
+
+    /**
+     * Abre una suscripción
+     *
+     * @param stores  almacenes de los que enviar cambios, o vacío para todos
+     * @param lastSeq último cambio que ya recibió el cliente, o null para empezar desde ahora
+     */
+    public SseEmitter subscribe(Set<String> stores, Long lastSeq) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, stores);
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+
+        // Con el cerrojo, para que ningún cambio quede entre lo reenviado y lo nuevo
+        lock.lock();
+        try {
+            if (lastSeq != null && lastSeq != published) {
+                List<Event> missed = missedSince(lastSeq, subscriber);
+                if (missed == null) {
+                    subscriber.offer(reset());
+                } else {
+                    missed.forEach(subscriber::offer);
+                }
+            }
+            subscribers.add(subscriber);
+        } finally {
+            lock.unlock();
+        }
+        return emitter;
+    }
+
+    /**
+     * Cambios del buffer posteriores a lastSeq que van a ese suscriptor, o null
+     * si hay que enviar "reset": porque ya no están todos en el buffer o porque
+     * no caben en su cola, que sin esto se llenaría al reenviarlos y el cliente
+     * quedaría desconectado nada más reconectar (con el cerrojo)
+     */
+    private List<Event> missedSince(long lastSeq, Subscriber subscriber) {
+        long oldest = Math.max(horizon, published + 1 - recent.length);
+        if (lastSeq + 1 < oldest || lastSeq > published) {
+            return null;
+        }
+        List<Event> missed = new ArrayList<>();
+        for (long seq = lastSeq + 1; seq <= published; seq++) {
+            Event event = recent[(int) (seq % recent.length)];
+            if (subscriber.accepts(event)) {
+                if (missed.size() == subscriberQueueSize) {
+                    return null;
+                }
+                missed.add(event);
+            }
+        }
+        return missed;
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Suscriptores desconectados por no leer a tiempo
+     */
+    public long evictionCount() {
+        return evictions.get();
+    }
+
+    @PreDestroy
+    public void close() {
+        heartbeats.shutdownNow();
+        publisher.shutdownNow();
+        senders.shutdownNow();
+        subscribers.forEach(Subscriber::close);
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscribers.remove(subscriber)) {
+            keepUntil = System.nanoTime() + resumeNanos;
+        }
+    }
+
+    /**
+     * Reserva la secuencia de los cambios (se llama dentro de la sección de
+     * escritura del almacén) y los publica cuando son duraderos
+     * Sin suscriptores, ni se serializan ni se guardan: pasado un rato desde
+     * que se fue el último, nadie puede retomar desde ellos
+     */
+    private void track(String store, List<Journal.Entry> entries, CompletableFuture<Void> durable) {
+        boolean keep = !subscribers.isEmpty() || System.nanoTime() - keepUntil < 0;
+        List<Pending> batch = new ArrayList<>(entries.size());
+        lock.lock();
+        try {
+            for (Journal.Entry entry : entries) {
+                Pending change = new Pending(nextSeq++, store, entry.type(), keep ? entry.data() : null);
+                change.done = !keep;
+                pending.add(change);
+                batch.add(change);
+            }
+            if (!keep) {
+                flush();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (keep) {
+            durable.whenComplete((ignored, error) -> {
+                try {
+                    publisher.execute(() -> resolve(batch, error == null));
+                } catch (RejectedExecutionException e) {
+                    // Cerrando la aplicación
+                }
+            });
+        }
+    }
+
+    // En el hilo de publicación: serializa fuera de cualquier cerrojo y publica en orden
+    private void resolve(List<Pending> batch, boolean durable) {
+        for (Pending change : batch) {
+            if (durable) {
+                change.json = serialize(new Change(change.seq, change.store, change.type, change.data));
+            }
+            change.data = null;
+        }
+        lock.lock();
+        try {
+            batch.forEach(change -> change.done = true);
+            flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Publica los cambios resueltos del principio de la cola (con el cerrojo)
+    private void flush() {
+        while (!pending.isEmpty() && pending.peek().done) {
+            Pending change = pending.poll();
+            published = change.seq;
+            if (change.json == null) {
+                // Sin guardar o sin llegar a disco: nadie puede retomar desde antes
+                // de aquí, y quien esté conectado tiene que recargar los datos
+                horizon = change.seq + 1;
+                if (!subscribers.isEmpty()) {
+                    Event reset = reset();
+                    subscribers.forEach(subscriber -> subscriber.offer(reset));
+                }
+                continue;
+            }
+            Event event = new Event(change.seq, change.store, "change", change.json);
+            recent[(int) (change.seq % recent.length)] = event;
+            for (Subscriber subscriber : subscribers) {
+                subscriber.offer(event);
+            }
+        }
+    }
+
+    // Con el cerrojo
+    private Event reset() {
+        return new Event(published, null, "reset", "{\"seq\":" + published + "}");
+    }
+
+    private String serialize(Change change) {
+        try {
+            return mapper.writeValueAsString(change);
+        } catch (JsonProcessingException e) {
+            log.warn("No se pudo serializar el cambio {} de {}", change.seq(), change.store(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Cuerpo de cada evento
+     */
+    record Change(long seq, String store, ChangeType type, Object data) {
+    }
+
+    // store es null en los eventos que van a todos los suscriptores
+    private record Event(long seq, String store, String name, String json) {
+    }
+
+    // Cambio anotado en el journal que aún no se ha publicado
+    private static final class Pending {
+
+        private final long seq;
+        private final String store;
+        private final ChangeType type;
+        private Object data;
+        // Escritos en el hilo de publicación y leídos con el cerrojo
+        private String json;
+        private boolean done;
+
+        private Pending(long seq, String store, ChangeType type, Object data) {
+            this.seq = seq;
+            this.store = store;
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final Set<String> stores;
+        private final ArrayBlockingQueue<Event> queue = new ArrayBlockingQueue<>(subscriberQueueSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Subscriber(SseEmitter emitter, Set<String> stores) {
+            this.emitter = emitter;
+            this.stores = stores;
+        }
+
+        private boolean accepts(Event event) {
+            return event.store() == null || stores.isEmpty() || stores.contains(event.store());
+        }
+
+        private void offer(Event event) {
+            if (closed || !accepts(event)) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                if (event != HEARTBEAT) {
+                    evictions.incrementAndGet();
+                    log.debug("Suscriptor desconectado por no leer los cambios a tiempo");
+                    close();
+                }
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    close();
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Event event;
+                while (!closed && (event = queue.poll()) != null) {
+                    send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // El cliente se ha ido
+                close();
+                return;
+            } finally {
+                scheduled.set(false);
+            }
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void send(Event event) throws IOException {
+            if (event == HEARTBEAT) {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } else {
+                emitter.send(SseEmitter.event().id(String.valueOf(event.seq())).name(event.name())
+                        .data(event.json(), MediaType.APPLICATION_JSON));
+            }
+        }
+
+        private void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            unsubscribe(this);
+            queue.clear();
+            // complete espera a que termine el envío en curso: nunca desde la sección de escritura
+            try {
+                senders.execute(emitter::complete);
+            } catch (RejectedExecutionException e) {
+                emitter.complete();
+            }
+        }
+    }
+}
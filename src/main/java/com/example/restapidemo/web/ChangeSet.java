@@ -0,0 +1,16 @@
+package com.example.restapidemo.web;
+
+import java.util.List;
+
+/**
+ * Cambios de un almacén desde una versión, para sincronizar sin descargarlo entero
+ *
+ * @param version     versión a enviar como "since" en la siguiente petición
+ * @param reinicio    no se conocen todas las bajas desde la versión pedida: hay que
+ *                    descartar los datos locales y quedarse con los modificados
+ * @param pendientes  hay más cambios después de version
+ * @param modificados entidades creadas o modificadas, en el orden en el que cambiaron
+ * @param eliminados  identificadores de las entidades eliminadas
+ */
+public record ChangeSet<T, K>(long version, boolean reinicio, boolean pendientes, List<T> modificados, List<K> eliminados) {
+}
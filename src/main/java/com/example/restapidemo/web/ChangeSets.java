@@ -0,0 +1,39 @@
+package com.example.restapidemo.web;
+
+import com.example.restapidemo.store.VersionLog;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Construye las respuestas de los endpoints /changes
+ */
+public final class ChangeSets {
+
+    private ChangeSets() {
+    }
+
+    /**
+     * Ejecuta la consulta y devuelve 200 con los cambios separados en
+     * modificados y eliminados, o 400 si la versión o el límite no son válidos
+     */
+    public static <K, T> ResponseEntity<ChangeSet<T, K>> of(long since, Integer limit,
+                                                            BiFunction<Long, Integer, VersionLog.Slice<K, T>> query) {
+        if (since < 0 || (limit != null && limit < 1)) {
+            return ResponseEntity.badRequest().build();
+        }
+        VersionLog.Slice<K, T> slice = query.apply(since, limit);
+        List<T> updated = new ArrayList<>();
+        List<K> deleted = new ArrayList<>();
+        for (VersionLog.Change<K, T> change : slice.changes()) {
+            if (change.value() == null) {
+                deleted.add(change.key());
+            } else {
+                updated.add(change.value());
+            }
+        }
+        return ResponseEntity.ok(new ChangeSet<>(slice.version(), slice.reset(), slice.more(), updated, deleted));
+    }
+}
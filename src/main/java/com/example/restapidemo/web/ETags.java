@@ -0,0 +1,108 @@
+package com.example.restapidemo.web;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Enumeration;
+import java.util.function.Supplier;
+
+/**
+ * Respuestas condicionales con ETag / If-None-Match
+ * El ETag sale de los contadores de versión de los almacenes (el de la
+ * entidad o el de todo el almacén) y de los campos pedidos con ?fields=, así
+ * que no hace falta calcular ningún hash del cuerpo. Si el cliente ya tiene
+ * esa versión se responde 304 sin consultar ni serializar nada
+ *
+ * Las respuestas comprimidas llevan el mismo ETag con "-gzip" al final (un
+ * ETag fuerte distingue la codificación); al comparar se ignora ese sufijo,
+ * porque la versión que tiene el cliente sigue valiendo en cualquier codificación
+ */
+public final class ETags {
+
+    private static final String GZIP_SUFFIX = "-gzip";
+
+    private ETags() {
+    }
+
+    /**
+     * ETag de un listado o búsqueda: cambia con cualquier cambio del almacén
+     */
+    public static String collection(String store, long version) {
+        return tag(store + "-" + version);
+    }
+
+    /**
+     * ETag de una entidad: cambia solo cuando cambia ella
+     */
+    public static String entity(String store, long id, long version) {
+        return tag(store + "-" + id + "-" + version);
+    }
+
+    /**
+     * ETag de una respuesta que junta datos de varios almacenes: cambia
+     * cuando cambia cualquiera de las versiones
+     */
+    public static String composite(String name, long id, long... versions) {
+        StringBuilder value = new StringBuilder(name).append('-').append(id);
+        for (long version : versions) {
+            value.append('-').append(version);
+        }
+        return tag(value.toString());
+    }
+
+    /**
+     * Devuelve 304 si la petición trae ya ese ETag en If-None-Match; si no,
+     * ejecuta la consulta y añade el ETag a la respuesta si es correcta
+     *
+     * @param etag calculado antes de la consulta, para que nunca sea más nuevo que los datos
+     */
+    public static <T> ResponseEntity<T> of(String etag, Supplier<? extends ResponseEntity<? extends T>> query) {
+        String known = knownTag(etag);
+        if (known != null) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(known).build();
+        }
+
+        ResponseEntity<? extends T> response = query.get();
+        if (!response.getStatusCode().is2xxSuccessful()) {
+            return new ResponseEntity<>(response.getBody(), response.getHeaders(), response.getStatusCode());
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(response.getHeaders());
+        headers.setETag("gzip".equals(headers.getFirst(HttpHeaders.CONTENT_ENCODING)) ? withGzip(etag) : etag);
+        return new ResponseEntity<>(response.getBody(), headers, response.getStatusCode());
+    }
+
+    // Los campos forman parte de la representación: ?fields=id,nombre no tiene el mismo ETag que sin ellos
+    private static String tag(String value) {
+        String fields = FieldProjection.requestedFields();
+        return "\"" + value + (fields == null ? "" : ";" + fields.replace(',', '+')) + "\"";
+    }
+
+    private static String withGzip(String etag) {
+        return etag.substring(0, etag.length() - 1) + GZIP_SUFFIX + "\"";
+    }
+
+    // El ETag de If-None-Match que corresponde a esta versión, o null si no hay ninguno
+    private static String knownTag(String etag) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servlet)) {
+            return null;
+        }
+        Enumeration<String> headers = servlet.getRequest().getHeaders(HttpHeaders.IF_NONE_MATCH);
+        while (headers.hasMoreElements()) {
+            for (String candidate : headers.nextElement().split(",")) {
+                String tag = candidate.strip();
+                // If-None-Match usa la comparación débil
+                String strong = tag.startsWith("W/") ? tag.substring(2) : tag;
+                if (strong.equals(etag) || strong.equals(withGzip(etag))) {
+                    return strong;
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.restapidemo.web;
+
+import com.example.restapidemo.model.Identifiable;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ser.BeanPropertyWriter;
+import com.fasterxml.jackson.databind.ser.BeanSerializerModifier;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Proyección de campos: con ?fields=id,nombre las entidades de la respuesta
+ * solo llevan esos campos
+ * Para cada combinación de campos se crea una vez un ObjectMapper propio cuyos
+ * serializadores ya no incluyen los demás campos; las peticiones siguientes
+ * con los mismos campos reutilizan sus serializadores, sin filtrar nada
+ * campo a campo en cada respuesta. Los nombres que no son propiedades de
+ * ningún modelo se descartan antes de buscar el ObjectMapper, y solo se
+ * guardan los de las combinaciones usadas más recientemente
+ *
+ * Solo afecta a los modelos de la aplicación (el paquete de {@link Identifiable}),
+ * no a otras respuestas JSON como las de Actuator
+ */
+@Component
+public class FieldProjection {
+
+    public static final String PARAMETER = "fields";
+
+    // Combinaciones distintas guardadas; al llegar se descarta la usada hace más tiempo
+    private static final int MAX_WRITERS = 64;
+    private static final String MODEL_PACKAGE = Identifiable.class.getPackageName();
+
+    private final ObjectMapper mapper;
+    // Propiedades JSON de todos los modelos: lo demás no puede estar en ninguna respuesta
+    private final Set<String> properties;
+    private final Map<String, ObjectWriter> writers = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ObjectWriter> eldest) {
+                    return size() > MAX_WRITERS;
+                }
+            });
+
+    public FieldProjection(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.properties = modelProperties(mapper);
+    }
+
+    /**
+     * Campos pedidos en la petición GET actual, ordenados y separados por comas,
+     * o null si no se ha pedido ninguna proyección
+     */
+    public static String requestedFields() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servlet) || !"GET".equals(servlet.getRequest().getMethod())) {
+            return null;
+        }
+        return normalize(servlet.getRequest().getParameter(PARAMETER));
+    }
+
+    /**
+     * Quita espacios y repetidos y ordena, para que "nombre,id" e "id, nombre" compartan serializadores
+     */
+    static String normalize(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        Set<String> names = Arrays.stream(fields.split(","))
+                .map(String::strip)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toCollection(TreeSet::new));
+        return names.isEmpty() ? null : String.join(",", names);
+    }
+
+    /**
+     * Writer que solo escribe esos campos de los modelos
+     *
+     * @param fields campos ya normalizados con {@link #requestedFields()}
+     */
+    public ObjectWriter writer(String fields) {
+        String known = Arrays.stream(fields.split(","))
+                .filter(properties::contains)
+                .collect(Collectors.joining(","));
+        ObjectWriter writer = writers.get(known);
+        if (writer != null) {
+            return writer;
+        }
+        // Se crea fuera del cerrojo: copiar el ObjectMapper no es barato
+        ObjectWriter created = createWriter(known);
+        ObjectWriter current = writers.putIfAbsent(known, created);
+        return current != null ? current : created;
+    }
+
+    private static Set<String> modelProperties(ObjectMapper mapper) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false);
+        scanner.addIncludeFilter((reader, factory) -> true);
+        Set<String> names = new HashSet<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(MODEL_PACKAGE)) {
+            JavaType type = mapper.constructType(ClassUtils.resolveClassName(candidate.getBeanClassName(), null));
+            mapper.getSerializationConfig().introspect(type).findProperties()
+                    .forEach(property -> names.add(property.getName()));
+        }
+        return Set.copyOf(names);
+    }
+
+    private ObjectWriter createWriter(String fields) {
+        Set<String> names = Set.of(fields.split(","));
+        // Si no queda ningún campo se escribe {} en lugar de fallar con la respuesta ya empezada
+        ObjectMapper projected = mapper.copy().disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+        projected.setSerializerFactory(projected.getSerializerFactory().withSerializerModifier(new BeanSerializerModifier() {
+            @Override
+            public List<BeanPropertyWriter> changeProperties(SerializationConfig config, BeanDescription description,
+                                                             List<BeanPropertyWriter> properties) {
+                if (!description.getBeanClass().getPackageName().equals(MODEL_PACKAGE)) {
+                    return properties;
+                }
+                return properties.stream().filter(property -> names.contains(property.getName())).toList();
+            }
+        }));
+        return projected.writer();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.restapidemo.web;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+/**
+ * Exportación en formato NDJSON (un objeto JSON por línea)
+ * Cada registro se serializa y se escribe directamente en la respuesta, así
+ * la memoria usada no depende del número de registros exportados
+ */
+public final class NdjsonExport {
+
+    // Cada cuántos registros se vacía el buffer hacia el cliente
+    private static final int FLUSH_EVERY = 256;
+
+    private NdjsonExport() {
+    }
+
+    /**
+     * Crea una respuesta que escribe los elementos según se van recorriendo
+     *
+     * @param fileName nombre sugerido para el fichero descargado
+     * @param items    elementos a exportar; se recorren mientras se escribe la respuesta
+     */
+    public static <T> ResponseEntity<StreamingResponseBody> of(ObjectMapper mapper, Class<T> type, String fileName, Iterable<T> items) {
+        ObjectWriter writer = mapper.writerFor(type).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                // Sin el espacio que Jackson pone por defecto entre valores raíz
+                generator.setRootValueSeparator(null);
+                int written = 0;
+                for (T item : items) {
+                    writer.writeValue(generator, item);
+                    generator.writeRaw('\n');
+                    if (++written % FLUSH_EVERY == 0) {
+                        generator.flush();
+                    }
+                }
+            }
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(fileName).build().toString())
+                .body(body);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.restapidemo.web;
+
+import com.example.restapidemo.store.Page;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Construye las respuestas de los endpoints paginados
+ * El cuerpo sigue siendo la lista de elementos, como en los endpoints sin
+ * paginar, y el cursor de la página siguiente va en una cabecera
+ */
+public final class PageResponses {
+
+    // Cabecera con el valor a enviar como "after" para pedir la página siguiente
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private PageResponses() {
+    }
+
+    /**
+     * Ejecuta la consulta y devuelve 200 con la página, o 400 si los
+     * parámetros de paginación no son válidos
+     */
+    public static <T> ResponseEntity<List<T>> of(Supplier<Page<T>> query) {
+        Page<T> page;
+        try {
+            page = query.get();
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.nextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+        }
+        return response.body(page.items());
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.restapidemo.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Respuestas JSON ya serializadas de los endpoints de lectura que cambian poco
+ * Cada entrada guarda los bytes de la respuesta (y su versión comprimida con
+ * gzip, que se calcula la primera vez que un cliente la acepta) junto a la
+ * versión del almacén con la que se generó. Mientras el almacén no cambie,
+ * responder es copiar esos bytes; en cuanto cambia, la siguiente lectura la
+ * vuelve a generar
+ *
+ * Se serializa con el ObjectMapper de Spring, así que la respuesta es
+ * idéntica a la que se obtendría sin caché. Con ?fields= se guarda aparte
+ * la respuesta de cada combinación de campos
+ */
+@Component
+public class ResponseCache {
+
+    // Número máximo de entradas; al llegar se vacía entera, como las demás cachés de la aplicación
+    private static final int MAX_ENTRIES = 4096;
+    // Por debajo de este tamaño comprimir no compensa
+    private static final int MIN_GZIP_SIZE = 1024;
+
+    private final ObjectMapper mapper;
+    private final FieldProjection projection;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ResponseCache(ObjectMapper mapper, FieldProjection projection) {
+        this.mapper = mapper;
+        this.projection = projection;
+    }
+
+    /**
+     * Devuelve 200 con el cuerpo guardado para esa clave, o lo genera si no está o es de una versión anterior
+     *
+     * @param version        versión actual de los datos; hay que leerla antes de leer los datos
+     * @param acceptEncoding cabecera Accept-Encoding de la petición (puede ser null)
+     * @param body           obtiene el objeto a serializar
+     */
+    public ResponseEntity<byte[]> get(String key, long version, String acceptEncoding, Supplier<?> body) {
+        return lookup(key, version, () -> Optional.of(body.get()))
+                .map(entry -> entry.respond(acceptEncoding))
+                .orElseThrow();
+    }
+
+    /**
+     * Como {@link #get}, pero con 404 si el objeto no existe
+     */
+    public ResponseEntity<byte[]> find(String key, long version, String acceptEncoding,
+                                       Supplier<? extends Optional<?>> body) {
+        return lookup(key, version, body)
+                .map(entry -> entry.respond(acceptEncoding))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Entradas guardadas
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private Optional<Entry> lookup(String baseKey, long version, Supplier<? extends Optional<?>> body) {
+        String fields = FieldProjection.requestedFields();
+        String key = fields == null ? baseKey : baseKey + "?" + FieldProjection.PARAMETER + "=" + fields;
+        Entry cached = entries.get(key);
+        if (cached != null && cached.version == version) {
+            return Optional.of(cached);
+        }
+        Optional<?> value = body.get();
+        if (value.isEmpty()) {
+            entries.remove(key);
+            return Optional.empty();
+        }
+        Entry entry = new Entry(version, serialize(value.get(), fields));
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+        // Si otro hilo ha guardado una versión más nueva mientras tanto, se queda la suya
+        entries.merge(key, entry, (current, created) -> current.version > created.version ? current : created);
+        return Optional.of(entry);
+    }
+
+    private byte[] serialize(Object value, String fields) {
+        try {
+            return fields == null ? mapper.writeValueAsBytes(value) : projection.writer(fields).writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo serializar la respuesta", e);
+        }
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+    }
+
+    private static final class Entry {
+
+        private final long version;
+        private final byte[] json;
+        // Se calcula la primera vez que hace falta; dos hilos pueden calcularla a la vez, con el mismo resultado
+        private volatile byte[] gzip;
+
+        private Entry(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+
+        private ResponseEntity<byte[]> respond(String acceptEncoding) {
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (json.length < MIN_GZIP_SIZE || !acceptsGzip(acceptEncoding)) {
+                return response.body(json);
+            }
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(gzip());
+        }
+
+        private byte[] gzip() {
+            byte[] compressed = gzip;
+            if (compressed == null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+                try (GZIPOutputStream stream = new GZIPOutputStream(out)) {
+                    stream.write(json);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                compressed = out.toByteArray();
+                gzip = compressed;
+            }
+            return compressed;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.restapidemo.web;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limitador de peticiones por clave (email, IP...) con un token bucket por clave
+ * Cada clave puede gastar hasta "burst" peticiones seguidas y recupera
+ * "perMinute" peticiones por minuto
+ *
+ * Las claves se reparten en franjas, cada una con su propio cerrojo, para que
+ * muchas peticiones a la vez con claves distintas no esperen unas a otras.
+ * Los buckets que se han vuelto a llenar se descartan, porque equivalen a no
+ * tener bucket, así que la memoria depende de las claves activas y no de
+ * todas las que se han visto
+ */
+public class TokenBucketLimiter {
+
+    private static final int STRIPES = 64;
+    // A partir de este tamaño una franja limpia sus buckets llenos
+    private static final int STRIPE_CLEANUP_SIZE = 1024;
+
+    private final double burst;
+    private final double tokensPerNano;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    public TokenBucketLimiter(int burst, int perMinute) {
+        this.burst = burst;
+        this.tokensPerNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Gasta un token de la clave. Devuelve false si no le quedan
+     */
+    public boolean tryAcquire(String key) {
+        int hash = key.hashCode();
+        Stripe stripe = stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+        long now = System.nanoTime();
+        stripe.lock.lock();
+        try {
+            Bucket bucket = stripe.buckets.get(key);
+            if (bucket == null) {
+                if (stripe.buckets.size() >= STRIPE_CLEANUP_SIZE) {
+                    stripe.removeFull(now);
+                }
+                bucket = new Bucket(burst, now);
+                stripe.buckets.put(key, bucket);
+            } else {
+                bucket.refill(now);
+            }
+            if (bucket.tokens < 1) {
+                return false;
+            }
+            bucket.tokens -= 1;
+            return true;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, Bucket> buckets = new HashMap<>();
+
+        private void removeFull(long now) {
+            Iterator<Bucket> iterator = buckets.values().iterator();
+            while (iterator.hasNext()) {
+                Bucket bucket = iterator.next();
+                bucket.refill(now);
+                if (bucket.tokens >= burst) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private final class Bucket {
+
+        private double tokens;
+        private long updatedAt;
+
+        private Bucket(double tokens, long updatedAt) {
+            this.tokens = tokens;
+            this.updatedAt = updatedAt;
+        }
+
+        private void refill(long now) {
+            tokens = Math.min(burst, tokens + (now - updatedAt) * tokensPerNano);
+            updatedAt = now;
+        }
+    }
+}
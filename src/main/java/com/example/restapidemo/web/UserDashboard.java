@@ -0,0 +1,17 @@
+package com.example.restapidemo.web;
+
+import com.example.restapidemo.model.Center;
+import com.example.restapidemo.model.Profile;
+import com.example.restapidemo.model.User;
+
+import java.util.List;
+
+/**
+ * Todo lo que necesita la pantalla de un usuario, en una sola respuesta
+ *
+ * @param usuario  el usuario
+ * @param perfiles sus perfiles, ordenados por ID (vacío si no tiene)
+ * @param centros  los centros que tiene asignados, completos y ordenados por ID
+ */
+public record UserDashboard(User usuario, List<Profile> perfiles, List<Center> centros) {
+}